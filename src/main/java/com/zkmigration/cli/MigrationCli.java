@@ -1,6 +1,18 @@
 package com.zkmigration.cli;
 
+import com.zkmigration.core.EnsembleFanOut;
+import com.zkmigration.core.ExecutionMode;
+import com.zkmigration.core.FanOut;
+import com.zkmigration.core.FanOutPolicy;
+import com.zkmigration.core.HistoryEncoding;
+import com.zkmigration.core.HistoryLayout;
+import com.zkmigration.core.MigrationOptions;
 import com.zkmigration.core.MigrationService;
+import com.zkmigration.core.RestoreMode;
+import com.zkmigration.core.TenantFanOut;
+import com.zkmigration.core.ThreadingMode;
+import com.zkmigration.core.TreeSnapshotExporter;
+import com.zkmigration.core.TreeSnapshotRestorer;
 import com.zkmigration.model.ChangeLog;
 import com.zkmigration.parser.ChangeLogParser;
 import org.apache.curator.framework.CuratorFramework;
@@ -11,12 +23,13 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 @Command(name = "zkmigration", mixinStandardHelpOptions = true, version = "1.0",
-        description = "Zookeeper Migration Tool", subcommands = {UpdateCommand.class, RollbackCommand.class})
+        description = "Zookeeper Migration Tool", subcommands = {UpdateCommand.class, RollbackCommand.class, ConvertHistoryCommand.class, ExportCommand.class, RestoreCommand.class})
 public class MigrationCli implements Callable<Integer> {
 
     @Override
@@ -31,25 +44,110 @@ public class MigrationCli implements Callable<Integer> {
     }
 }
 
-abstract class BaseCommand implements Callable<Integer> {
-    @Option(names = {"-c", "--connection"}, description = "Zookeeper connection string", required = true)
-    protected String connectionString;
-
-    @Option(names = {"-f", "--file"}, description = "Path to changelog file", required = true)
-    protected File changeLogFile;
+abstract class ConnectionCommand implements Callable<Integer> {
+    @Option(names = {"-c", "--connection"}, description = "Zookeeper connection string; update and rollback accept it repeatedly to migrate several ensembles at once", required = true)
+    protected List<String> connectionStrings;
 
     @Option(names = {"-p", "--path"}, description = "Root path for migration history", defaultValue = "/zookeeper-migrations")
     protected String historyPath;
 
-    @Option(names = {"-i", "--interactive"}, description = "Interactive mode: preview changes and prompt for confirmation")
-    protected boolean interactive;
+    @Option(names = {"--history-layout"}, description = "History storage layout (FLAT, SNAPSHOT or SHARDED)", defaultValue = "FLAT")
+    protected HistoryLayout historyLayout;
+
+    @Option(names = {"--history-cache"}, description = "Directory for a local history cache, reused while the history is unchanged")
+    protected Path historyCacheDirectory;
+
+    @Option(names = {"--threads"}, description = "Threads for blocking I/O (PLATFORM or VIRTUAL; VIRTUAL needs Java 21, older runtimes use a bounded platform pool)", defaultValue = "PLATFORM")
+    protected ThreadingMode threadingMode;
+
+    @Option(names = {"--history-encoding"}, description = "Encoding of new history records (JSON or SMILE)", defaultValue = "JSON")
+    protected HistoryEncoding historyEncoding;
 
     protected CuratorFramework createClient() {
+        if (connectionStrings.size() > 1) {
+            throw new IllegalArgumentException("This command works on one ensemble, got " + connectionStrings.size());
+        }
+        return createClient(connectionStrings.get(0));
+    }
+
+    protected CuratorFramework createClient(String connectionString) {
         CuratorFramework client = CuratorFrameworkFactory.newClient(connectionString, new ExponentialBackoffRetry(1000, 3));
         client.start();
         return client;
     }
 
+    protected MigrationOptions createOptions() {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(historyLayout);
+        options.setHistoryCacheDirectory(historyCacheDirectory);
+        options.setHistoryEncoding(historyEncoding);
+        options.setThreadingMode(threadingMode);
+        return options;
+    }
+}
+
+abstract class BaseCommand extends ConnectionCommand {
+    @Option(names = {"-f", "--file"}, description = "Path to changelog file", required = true)
+    protected File changeLogFile;
+
+    @Option(names = {"-i", "--interactive"}, description = "Interactive mode: preview changes and prompt for confirmation")
+    protected boolean interactive;
+
+    @Option(names = {"--fan-out-policy"}, description = "With several ensembles: FAIL_FAST stops the others before their next changeset once one fails, BEST_EFFORT runs them all", defaultValue = "FAIL_FAST")
+    protected FanOutPolicy fanOutPolicy;
+
+    @Option(names = {"--tenants"}, split = ",", description = "Migrate these tenants through one session, each with its own history root; {tenant} in --path and in change paths is replaced by the tenant id")
+    protected List<String> tenants;
+
+    @Option(names = {"--tenant-concurrency"}, description = "Maximum tenants migrated at the same time", defaultValue = "8")
+    protected int tenantConcurrency;
+
+    @Option(names = {"--execution-mode"}, description = "How changesets are applied (SEQUENTIAL, TRANSACTIONAL or PIPELINED)", defaultValue = "SEQUENTIAL")
+    protected ExecutionMode executionMode;
+
+    @Option(names = {"--parallelism"}, description = "Run up to this many changesets that touch unrelated paths concurrently", defaultValue = "1")
+    protected int changeSetParallelism;
+
+    @Option(names = {"--max-in-flight-writes"}, description = "Maximum asynchronous writes in flight in PIPELINED mode", defaultValue = "256")
+    protected int maxInFlightWrites;
+
+    @Option(names = {"--group-commit"}, description = "Write history markers in batches of up to this many changesets (SEQUENTIAL and PIPELINED modes)", defaultValue = "1")
+    protected int groupCommitSize;
+
+    @Option(names = {"--group-commit-interval"}, description = "Maximum time in milliseconds a history marker waits for its batch", defaultValue = "1000")
+    protected long groupCommitIntervalMillis;
+
+    @Option(names = {"--max-ops-per-second"}, description = "Limit writes to this many operations per second (0 for no limit)", defaultValue = "0")
+    protected double maxWriteOpsPerSecond;
+
+    @Option(names = {"--max-bytes-per-second"}, description = "Limit writes to this many bytes per second (0 for no limit)", defaultValue = "0")
+    protected long maxWriteBytesPerSecond;
+
+    @Option(names = {"--adaptive-throttle"}, description = "Slow writes down and shrink transactions while the ensemble's write latency is elevated")
+    protected boolean adaptiveThrottling;
+
+    @Option(names = {"--checkpoint-interval"}, description = "In SEQUENTIAL mode, record a changeset's progress every this many changes so a failed run resumes where it stopped (0 disables)", defaultValue = "0")
+    protected int checkpointInterval;
+
+    @Option(names = {"--skip-unchanged"}, description = "Skip updates and upserts whose data already matches the node")
+    protected boolean skipUnchangedWrites;
+
+    @Override
+    protected MigrationOptions createOptions() {
+        MigrationOptions options = super.createOptions();
+        options.setExecutionMode(executionMode);
+        options.setChangeSetParallelism(changeSetParallelism);
+        options.setMaxInFlightWrites(maxInFlightWrites);
+        options.setGroupCommitSize(groupCommitSize);
+        options.setGroupCommitIntervalMillis(groupCommitIntervalMillis);
+        options.setMaxWriteOpsPerSecond(maxWriteOpsPerSecond);
+        options.setMaxWriteBytesPerSecond(maxWriteBytesPerSecond);
+        options.setAdaptiveThrottling(adaptiveThrottling);
+        options.setCheckpointInterval(checkpointInterval);
+        options.setSkipUnchangedWrites(skipUnchangedWrites);
+        return options;
+    }
+
     protected boolean confirmExecution(boolean hasChanges) throws java.io.IOException {
         if (!hasChanges) {
             return false;
@@ -65,10 +163,16 @@ abstract class BaseCommand implements Callable<Integer> {
     }
 
     protected Integer executeAction(MigrationAction action) {
+        if (tenants != null && !tenants.isEmpty()) {
+            return fanOutTenants(action);
+        }
+        if (connectionStrings.size() > 1) {
+            return fanOut(action);
+        }
         try (CuratorFramework client = createClient()) {
             ChangeLogParser parser = new ChangeLogParser();
             ChangeLog changeLog = parser.parse(changeLogFile);
-            MigrationService service = new MigrationService(client, historyPath);
+            MigrationService service = new MigrationService(client, historyPath, createOptions());
 
             action.execute(service, changeLog);
             return 0;
@@ -77,6 +181,48 @@ abstract class BaseCommand implements Callable<Integer> {
             return 1;
         }
     }
+
+    private Integer fanOut(MigrationAction action) {
+        if (interactive) {
+            System.err.println("Interactive mode works on one ensemble at a time");
+            return 1;
+        }
+        try {
+            ChangeLog changeLog = new ChangeLogParser().parse(changeLogFile);
+            List<FanOut.Result> results = new EnsembleFanOut(connectionStrings, this::createClient, historyPath, createOptions(), fanOutPolicy)
+                    .run(changeLog, service -> action.execute(service, changeLog));
+            return report("ensemble", results);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    private Integer fanOutTenants(MigrationAction action) {
+        if (interactive) {
+            System.err.println("Interactive mode works on one tenant at a time");
+            return 1;
+        }
+        try (CuratorFramework client = createClient()) {
+            ChangeLog changeLog = new ChangeLogParser().parse(changeLogFile);
+            List<FanOut.Result> results = new TenantFanOut(client, historyPath, createOptions(), tenantConcurrency, fanOutPolicy)
+                    .run(tenants, changeLog, action::execute);
+            return report("tenant", results);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    private static Integer report(String kind, List<FanOut.Result> results) {
+        System.out.println("Results per " + kind + ":");
+        boolean failed = false;
+        for (FanOut.Result result : results) {
+            System.out.println("  " + result);
+            failed |= result.status() != FanOut.Status.SUCCEEDED;
+        }
+        return failed ? 1 : 0;
+    }
 }
 
 @Command(name = "update", description = "Apply pending migrations")
@@ -127,3 +273,77 @@ class RollbackCommand extends BaseCommand {
         });
     }
 }
+
+@Command(name = "convert-history", description = "Convert a flat migration history to another layout")
+class ConvertHistoryCommand extends ConnectionCommand {
+    @Option(names = {"--to"}, description = "Target history layout (SNAPSHOT or SHARDED)", defaultValue = "SNAPSHOT")
+    private HistoryLayout targetLayout;
+
+    @Override
+    public Integer call() {
+        System.out.println("Converting history...");
+        try (CuratorFramework client = createClient()) {
+            MigrationOptions options = createOptions();
+            options.setHistoryLayout(targetLayout);
+            int records = new MigrationService(client, historyPath, options).convertHistory(targetLayout);
+            System.out.println("Conversion complete: " + records + " changesets in history.");
+            return 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+}
+
+@Command(name = "export", description = "Export a subtree to a snapshot file")
+class ExportCommand extends ConnectionCommand {
+    @Option(names = {"-r", "--root"}, description = "Root of the subtree to export", required = true)
+    private String root;
+
+    @Option(names = {"-o", "--output"}, description = "Snapshot file to write", required = true)
+    private Path output;
+
+    @Option(names = {"--compress"}, description = "Deflate node data in the snapshot")
+    private boolean compress;
+
+    @Override
+    public Integer call() {
+        System.out.println("Exporting " + root + "...");
+        try (CuratorFramework client = createClient()) {
+            TreeSnapshotExporter.Stats stats = new TreeSnapshotExporter(client, createOptions()).export(root, output, compress);
+            System.out.println("Export complete: " + stats);
+            return 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+}
+
+@Command(name = "restore", description = "Restore a subtree from a snapshot file")
+class RestoreCommand extends ConnectionCommand {
+    @Option(names = {"-i", "--input"}, description = "Snapshot file to restore", required = true)
+    private Path input;
+
+    @Option(names = {"-r", "--root"}, description = "Restore below this path instead of the snapshot's own root")
+    private String root;
+
+    @Option(names = {"--mode"}, description = "MERGE keeps other nodes and skips unchanged ones; OVERWRITE deletes the target subtree first", defaultValue = "MERGE")
+    private RestoreMode mode;
+
+    @Option(names = {"--writers"}, description = "Subtrees written concurrently", defaultValue = "4")
+    private int writers;
+
+    @Override
+    public Integer call() {
+        System.out.println("Restoring " + input + "...");
+        try (CuratorFramework client = createClient()) {
+            TreeSnapshotRestorer.Stats stats = new TreeSnapshotRestorer(client, createOptions()).restore(input, root, mode, writers);
+            System.out.println("Restore complete: " + stats);
+            return 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zkmigration.model.Change;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.List;
+
+/**
+ * Checkpoints how many changes of a changeset were applied, in a small node
+ * below the progress path, so a run that failed halfway resumes at the first
+ * incomplete change instead of replaying the whole changeset. The checkpoint
+ * holds a checksum chained over the completed changes; a changeset whose
+ * completed prefix was edited since starts from the beginning again. The node is
+ * deleted in the transaction that records the changeset in the history.
+ */
+@Slf4j
+class ChangeSetProgress {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final CuratorFramework client;
+    private final String nodePath;
+    private final int interval;
+    private int completed;
+    private int checkpointed;
+    private String prefix = "";
+    private boolean recorded;
+
+    record Checkpoint(int completed, String prefix) {
+    }
+
+    ChangeSetProgress(CuratorFramework client, String progressPath, String changeSetId, int interval) {
+        this.client = client;
+        this.nodePath = progressPath + "/" + FlatHistoryStore.encodeId(changeSetId);
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the number of leading changes that were already applied.
+     */
+    int resume(List<Change> changes) throws Exception {
+        byte[] data;
+        try {
+            data = client.getData().forPath(nodePath);
+        } catch (KeeperException.NoNodeException e) {
+            return 0;
+        }
+        recorded = true;
+        Checkpoint checkpoint = mapper.readValue(data, Checkpoint.class);
+        if (checkpoint.completed() > changes.size()) {
+            log.warn("Ignoring the progress of {}: it has fewer changes than were applied", nodePath);
+            return 0;
+        }
+        String chained = "";
+        for (int i = 0; i < checkpoint.completed(); i++) {
+            chained = ChecksumUtil.chainChecksum(chained, changes.get(i));
+        }
+        if (!chained.equals(checkpoint.prefix())) {
+            log.warn("Ignoring the progress of {}: its completed changes were modified", nodePath);
+            return 0;
+        }
+        completed = checkpoint.completed();
+        checkpointed = completed;
+        prefix = chained;
+        return completed;
+    }
+
+    /**
+     * Records that the next change was applied, writing a checkpoint every {@code interval} changes.
+     */
+    void completed(Change change) throws Exception {
+        prefix = ChecksumUtil.chainChecksum(prefix, change);
+        completed++;
+        if (completed % interval == 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Writes a checkpoint for the changes completed since the last one, such as after a failed change.
+     */
+    void checkpoint() throws Exception {
+        if (completed == checkpointed) {
+            return;
+        }
+        byte[] data = mapper.writeValueAsBytes(new Checkpoint(completed, prefix));
+        if (recorded) {
+            client.setData().forPath(nodePath, data);
+        } else {
+            client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(nodePath, data);
+            recorded = true;
+        }
+        checkpointed = completed;
+    }
+
+    /**
+     * Adds the deletion of the checkpoint, if one was written, to the changeset's history marker.
+     */
+    HistoryMarker clearedWith(HistoryMarker marker) throws Exception {
+        if (!recorded) {
+            return marker;
+        }
+        CuratorOp delete = client.transactionOp().delete().forPath(nodePath);
+        return marker.including(delete, TransactionBatcher.estimateSize(nodePath, null));
+    }
+}
@@ -0,0 +1,190 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.Rename;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs changesets concurrently where their paths allow it. Two changesets
+ * conflict when one touches a path that is equal to, an ancestor of or a
+ * descendant of a path the other touches (rename and copy destinations included; parents
+ * created on the way are ancestors). A changeset only starts once every earlier
+ * conflicting changeset has finished, so conflicting changesets keep changelog order.
+ */
+@Slf4j
+class ChangeSetScheduler {
+    private final ExecutorService pool;
+    private final int maxRunning;
+
+    ChangeSetScheduler(ExecutorService pool, int maxRunning) {
+        this.pool = pool;
+        this.maxRunning = maxRunning;
+    }
+
+    @FunctionalInterface
+    interface ChangeSetTask {
+        void run(ChangeSet changeSet) throws Exception;
+    }
+
+    static Set<String> footprint(ChangeSet changeSet) {
+        Set<String> paths = new LinkedHashSet<>();
+        if (changeSet.getChanges() != null) {
+            for (Change change : changeSet.getChanges()) {
+                if (change.getPath() != null) {
+                    paths.add(change.getPath());
+                }
+                if (change instanceof Rename rename && rename.getDestination() != null) {
+                    paths.add(rename.getDestination());
+                }
+                if (change instanceof Copy copy && copy.getDestination() != null) {
+                    paths.add(copy.getDestination());
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns, for every changeset, the indexes of the earlier changesets it must wait for.
+     */
+    static List<Set<Integer>> dependencies(List<ChangeSet> changeSets) {
+        // Last changeset that touched a path, and the changesets that touched something below it since
+        Map<String, Integer> lastTouch = new HashMap<>();
+        Map<String, Set<Integer>> touchedBelow = new HashMap<>();
+        List<Set<Integer>> dependencies = new ArrayList<>();
+
+        for (int i = 0; i < changeSets.size(); i++) {
+            Set<String> paths = footprint(changeSets.get(i));
+            Set<Integer> deps = new TreeSet<>();
+            for (String path : paths) {
+                Integer previous = lastTouch.get(path);
+                if (previous != null) {
+                    deps.add(previous);
+                }
+                Set<Integer> below = touchedBelow.get(path);
+                if (below != null) {
+                    deps.addAll(below);
+                }
+                for (String ancestor : MigrationUtils.ancestors(path)) {
+                    previous = lastTouch.get(ancestor);
+                    if (previous != null) {
+                        deps.add(previous);
+                    }
+                }
+            }
+            deps.remove(i);
+
+            for (String path : paths) {
+                lastTouch.put(path, i);
+                // Later changesets below this path conflict with i, which already waits for these
+                touchedBelow.remove(path);
+            }
+            for (String path : paths) {
+                for (String ancestor : MigrationUtils.ancestors(path)) {
+                    touchedBelow.computeIfAbsent(ancestor, key -> new LinkedHashSet<>()).add(i);
+                }
+            }
+            dependencies.add(deps);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Runs every changeset once its dependencies have finished. After the first
+     * failure no further changeset is started; running ones are awaited and the
+     * failure of the earliest changeset in changelog order is thrown.
+     */
+    void run(List<ChangeSet> changeSets, ChangeSetTask task) throws Exception {
+        List<Set<Integer>> dependencies = dependencies(changeSets);
+        int[] waitingFor = new int[changeSets.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < changeSets.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < changeSets.size(); i++) {
+            waitingFor[i] = dependencies.get(i).size();
+            for (int dependency : dependencies.get(i)) {
+                dependents.get(dependency).add(i);
+            }
+            if (waitingFor[i] == 0) {
+                ready.add(i);
+            }
+        }
+        log.info("Scheduling {} changesets, {} can start immediately", changeSets.size(), ready.size());
+
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        TreeMap<Integer, Exception> failures = new TreeMap<>();
+        int running = 0;
+        int finished = 0;
+
+        while (true) {
+            if (failures.isEmpty()) {
+                while (!ready.isEmpty() && running < maxRunning) {
+                    int index = ready.poll();
+                    ChangeSet changeSet = changeSets.get(index);
+                    pool.execute(() -> {
+                        try {
+                            task.run(changeSet);
+                            outcomes.add(new Outcome(index, null));
+                        } catch (Exception e) {
+                            outcomes.add(new Outcome(index, e));
+                        } catch (Throwable t) {
+                            outcomes.add(new Outcome(index, new RuntimeException(t)));
+                            throw t;
+                        }
+                    });
+                    running++;
+                }
+            }
+            if (running == 0) {
+                break;
+            }
+
+            Outcome outcome;
+            try {
+                outcome = outcomes.take();
+            } catch (InterruptedException e) {
+                failures.put(-1, e);
+                continue;
+            }
+            running--;
+            finished++;
+            if (outcome.error() != null) {
+                failures.put(outcome.index(), outcome.error());
+                continue;
+            }
+            for (int dependent : dependents.get(outcome.index())) {
+                if (--waitingFor[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            log.warn("{} of {} changesets finished before the run stopped", finished - failures.size(), changeSets.size());
+            Exception first = failures.pollFirstEntry().getValue();
+            failures.values().forEach(first::addSuppressed);
+            throw first;
+        }
+    }
+
+    private record Outcome(int index, Exception error) {
+    }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.zkmigration.model.Change;
 import com.zkmigration.model.ChangeSet;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,4 +37,23 @@ public class ChecksumUtil {
             throw new RuntimeException("Failed to calculate checksum for ChangeSet " + changeSet.getId(), e);
         }
     }
+
+    /**
+     * Extends the checksum of a prefix of changes by the next change, so a prefix can be verified in one pass.
+     */
+    public static String chainChecksum(String previous, Change change) {
+        try {
+            String rawString = previous + ":" + mapper.writeValueAsString(change);
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] hashBytes = md.digest(rawString.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hashBytes) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to calculate checksum for change at " + change.getPath(), e);
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Stores values too large for one znode as chunk children plus a manifest in the
+ * node itself. Chunks are named {@code chunk-<generation>-<index>}, the generation
+ * being the node's child version when the write starts, and are written in
+ * size-bounded multi transactions; the manifest is set in the last of them, so a
+ * reader sees either the previous value or the complete new one. The chunks of
+ * the previous generation are deleted afterwards. A new node holds empty data
+ * until its manifest is written.
+ */
+@Slf4j
+public class ChunkedValues {
+    public static final int CHUNK_SIZE = 250_000;
+    private static final byte[] MANIFEST_PREFIX = "{\"zkChunkedValue\":".getBytes(StandardCharsets.UTF_8);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public record Manifest(int zkChunkedValue, long generation, int chunks, long size, String sha256) {
+    }
+
+    public static boolean isManifest(byte[] data) {
+        return data != null && data.length > MANIFEST_PREFIX.length
+                && Arrays.equals(data, 0, MANIFEST_PREFIX.length, MANIFEST_PREFIX, 0, MANIFEST_PREFIX.length);
+    }
+
+    public static Manifest parseManifest(byte[] data) throws IOException {
+        return mapper.readValue(data, Manifest.class);
+    }
+
+    public static void create(CuratorFramework client, String path, byte[] data) throws Exception {
+        client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(path, new byte[0]);
+        writeChunks(client, path, data, 0, 0);
+    }
+
+    /**
+     * Replaces the value of an existing node; expectedVersion (-1 for any) is checked against the node holding the manifest.
+     */
+    public static void update(CuratorFramework client, String path, byte[] data, int expectedVersion) throws Exception {
+        Stat stat = new Stat();
+        byte[] current = client.getData().storingStatIn(stat).forPath(path);
+        if (expectedVersion != -1 && stat.getVersion() != expectedVersion) {
+            throw KeeperException.create(KeeperException.Code.BADVERSION, path);
+        }
+        Manifest previous = isManifest(current) ? parseManifest(current) : null;
+        // The child version grows with every chunk ever created here, so even chunks left by a failed write cannot collide
+        writeChunks(client, path, data, stat.getCversion(), stat.getVersion());
+        if (previous != null) {
+            deleteChunks(client, path, previous);
+        }
+    }
+
+    /**
+     * Returns the node's value, reassembled from its chunks if it is chunked.
+     */
+    public static byte[] read(CuratorFramework client, String path, Stat stat) throws Exception {
+        byte[] data = stat != null ? client.getData().storingStatIn(stat).forPath(path) : client.getData().forPath(path);
+        if (!isManifest(data)) {
+            return data;
+        }
+        Manifest manifest = parseManifest(data);
+        byte[] value;
+        try (InputStream in = stream(client, path, manifest)) {
+            value = in.readAllBytes();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (value.length != manifest.size() || !sha256(value).equals(manifest.sha256())) {
+            throw new IOException("Chunked value at " + path + " does not match its manifest");
+        }
+        return value;
+    }
+
+    /**
+     * Streams the node's value one chunk at a time; plain values are returned as they are.
+     */
+    public static InputStream open(CuratorFramework client, String path) throws Exception {
+        byte[] data = client.getData().forPath(path);
+        return isManifest(data) ? stream(client, path, parseManifest(data)) : new ByteArrayInputStream(data);
+    }
+
+    private static InputStream stream(CuratorFramework client, String path, Manifest manifest) {
+        return new SequenceInputStream(new Enumeration<>() {
+            private int next;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < manifest.chunks();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                String chunk = chunkPath(path, manifest.generation(), next++);
+                try {
+                    return new ByteArrayInputStream(client.getData().forPath(chunk));
+                } catch (Exception e) {
+                    throw new UncheckedIOException(new IOException("Cannot read chunk " + chunk, e));
+                }
+            }
+        });
+    }
+
+    private static void writeChunks(CuratorFramework client, String path, byte[] data, long generation, int version) throws Exception {
+        int chunks = (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        TransactionBatcher batcher = new TransactionBatcher(client);
+        for (int i = 0; i < chunks; i++) {
+            String chunk = chunkPath(path, generation, i);
+            byte[] part = Arrays.copyOfRange(data, i * CHUNK_SIZE, Math.min(data.length, (i + 1) * CHUNK_SIZE));
+            batcher.add(client.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(chunk, part),
+                    TransactionBatcher.estimateSize(chunk, part));
+        }
+        byte[] manifest = mapper.writeValueAsBytes(new Manifest(1, generation, chunks, data.length, sha256(data)));
+        batcher.add(client.transactionOp().setData().withVersion(version).forPath(path, manifest),
+                TransactionBatcher.estimateSize(path, manifest));
+        batcher.flush();
+        log.debug("Wrote {} bytes to {} as {} chunks in {} transaction(s)", data.length, path, chunks, batcher.getTransactions());
+    }
+
+    private static void deleteChunks(CuratorFramework client, String path, Manifest manifest) throws Exception {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < manifest.chunks(); i++) {
+            chunks.add(chunkPath(path, manifest.generation(), i));
+        }
+        TransactionBatcher batcher = new TransactionBatcher(client);
+        for (String chunk : chunks) {
+            batcher.add(client.transactionOp().delete().forPath(chunk), TransactionBatcher.estimateSize(chunk, null));
+        }
+        batcher.flush();
+    }
+
+    private static String chunkPath(String path, long generation, int index) {
+        return String.format("%s/chunk-%d-%06d", path, generation, index);
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
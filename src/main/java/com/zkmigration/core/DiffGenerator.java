@@ -8,8 +8,9 @@ import java.util.List;
 public class DiffGenerator {
 
     public static String generateDiff(byte[] oldValue, byte[] newValue) {
-        if (oldValue == null) oldValue = new byte[0];
-        if (newValue == null) newValue = new byte[0];
+        // Compressed values are compared by their content
+        oldValue = oldValue == null ? new byte[0] : ValueCompression.decode(oldValue);
+        newValue = newValue == null ? new byte[0] : ValueCompression.decode(newValue);
 
         if (Arrays.equals(oldValue, newValue)) {
             return "";
@@ -0,0 +1,69 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeLogEntry;
+import com.zkmigration.model.ChangeSet;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs one changelog against several ensembles at once. Every ensemble gets its
+ * own client, lock and history below the same root path; the changelog is
+ * parsed once by the caller and its checksums are computed once here and shared.
+ * Changes are shared too; executions keep their per-run state to themselves.
+ */
+public class EnsembleFanOut {
+    private final List<String> connectionStrings;
+    private final Function<String, CuratorFramework> clientFactory;
+    private final String rootPath;
+    private final MigrationOptions options;
+    private final FanOutPolicy policy;
+
+    /**
+     * The factory returns a started client for a connection string; the fan-out closes it.
+     */
+    public EnsembleFanOut(List<String> connectionStrings, Function<String, CuratorFramework> clientFactory,
+                          String rootPath, MigrationOptions options, FanOutPolicy policy) {
+        if (connectionStrings.isEmpty()) {
+            throw new IllegalArgumentException("At least one ensemble is required");
+        }
+        this.connectionStrings = connectionStrings;
+        this.clientFactory = clientFactory;
+        this.rootPath = rootPath;
+        this.options = options;
+        this.policy = policy;
+    }
+
+    @FunctionalInterface
+    public interface EnsembleTask {
+        void run(MigrationService service) throws Exception;
+    }
+
+    /**
+     * Runs the task against every ensemble and returns one result per ensemble, in the given order.
+     */
+    public List<FanOut.Result> run(ChangeLog changeLog, EnsembleTask task) throws InterruptedException {
+        Map<ChangeSet, String> checksums = new HashMap<>();
+        if (changeLog.getZookeeperChangeLog() != null) {
+            for (ChangeLogEntry entry : changeLog.getZookeeperChangeLog()) {
+                if (entry instanceof ChangeSet cs) {
+                    checksums.put(cs, ChecksumUtil.calculateChecksum(cs));
+                }
+            }
+        }
+        Map<ChangeSet, String> shared = Collections.unmodifiableMap(checksums);
+        return new FanOut("ensemble", connectionStrings.size(), policy).run(connectionStrings, (connectionString, attach) -> {
+            try (CuratorFramework client = clientFactory.apply(connectionString)) {
+                MigrationService service = new MigrationService(client, rootPath, options);
+                service.shareChecksums(shared);
+                attach.accept(service);
+                task.run(service);
+            }
+        });
+    }
+}
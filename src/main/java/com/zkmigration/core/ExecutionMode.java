@@ -0,0 +1,13 @@
+package com.zkmigration.core;
+
+public enum ExecutionMode {
+    /** Each change is applied with its own call, then the history marker is written. */
+    SEQUENTIAL,
+    /** A changeset's changes and its history marker are committed in one multi transaction. */
+    TRANSACTIONAL,
+    /**
+     * Changes are issued asynchronously with up to {@link MigrationOptions#getMaxInFlightWrites()}
+     * in flight; changes on the same path or its ancestors keep their order.
+     */
+    PIPELINED
+}
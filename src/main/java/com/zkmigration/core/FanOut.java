@@ -0,0 +1,119 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Migrates several targets, such as ensembles or tenants, on a bounded pool and
+ * reports the outcome of each. With {@link FanOutPolicy#FAIL_FAST}, a failed
+ * target stops the others before their next changeset and keeps those still
+ * waiting from starting.
+ */
+@Slf4j
+public class FanOut {
+    private final String kind;
+    private final int concurrency;
+    private final FanOutPolicy policy;
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        /** Not started, or stopped between changesets, because another target failed. */
+        STOPPED
+    }
+
+    public record Result(String target, Status status, MigrationExecutor.WriteStats writes, long millis, Exception error) {
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d written, %d skipped in %d ms%s", target, status, writes.written(), writes.skipped(),
+                    millis, error != null ? " (" + error + ")" : "");
+        }
+    }
+
+    /**
+     * Migrates one target; the service it opens is passed to {@code attach} before it runs anything.
+     */
+    @FunctionalInterface
+    interface TargetTask {
+        void run(String target, Consumer<MigrationService> attach) throws Exception;
+    }
+
+    /**
+     * The kind names the targets in log messages.
+     */
+    FanOut(String kind, int concurrency, FanOutPolicy policy) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.kind = kind;
+        this.concurrency = concurrency;
+        this.policy = policy;
+    }
+
+    /**
+     * Runs the task for every target and returns one result per target, in the given order.
+     */
+    List<Result> run(List<String> targets, TargetTask task) throws InterruptedException {
+        AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, targets.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (String target : targets) {
+                futures.add(pool.submit(() -> runOne(target, failed, task)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // runOne reports every failure in its result
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            long succeeded = results.stream().filter(result -> result.status() == Status.SUCCEEDED).count();
+            log.info("Migrated {} of {} {}s", succeeded, targets.size(), kind);
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result runOne(String target, AtomicBoolean failed, TargetTask task) {
+        long start = System.nanoTime();
+        AtomicReference<MigrationService> service = new AtomicReference<>();
+        try {
+            if (policy == FanOutPolicy.FAIL_FAST && failed.get()) {
+                return result(target, Status.STOPPED, null, start, null);
+            }
+            task.run(target, attached -> {
+                if (policy == FanOutPolicy.FAIL_FAST) {
+                    attached.stopWhen(failed::get);
+                }
+                service.set(attached);
+            });
+            return result(target, Status.SUCCEEDED, service.get(), start, null);
+        } catch (CancellationException e) {
+            log.warn("Migration of {} {} stopped after another {} failed", kind, target, kind);
+            return result(target, Status.STOPPED, service.get(), start, null);
+        } catch (Exception e) {
+            failed.set(true);
+            log.error("Migration of {} {} failed", kind, target, e);
+            return result(target, Status.FAILED, service.get(), start, e);
+        }
+    }
+
+    private static Result result(String target, Status status, MigrationService service, long start, Exception error) {
+        MigrationExecutor.WriteStats writes = service != null ? service.getWriteStats() : new MigrationExecutor.WriteStats(0, 0);
+        return new Result(target, status, writes, (System.nanoTime() - start) / 1_000_000, error);
+    }
+}
@@ -0,0 +1,8 @@
+package com.zkmigration.core;
+
+public enum FanOutPolicy {
+    /** Stops the other ensembles before their next changeset once one of them fails. */
+    FAIL_FAST,
+    /** Runs every ensemble to its own end, whatever happens to the others. */
+    BEST_EFFORT
+}
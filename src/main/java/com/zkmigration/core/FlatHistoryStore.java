@@ -0,0 +1,180 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The original layout: every executed changeset is a child of the history node
+ * named after its Base64-encoded id and holding the JSON record.
+ */
+@Slf4j
+class FlatHistoryStore implements HistoryStore {
+    private final CuratorFramework client;
+    private final String historyPath;
+    private final HistoryCodec codec;
+    private final PipelinedReader reader;
+    private final boolean standalone;
+    private volatile boolean layoutVerified;
+
+    /**
+     * @param standalone whether this store owns the history node; a standalone
+     *                   store refuses to work on a history that was converted to
+     *                   another layout, since it would not see those records
+     */
+    FlatHistoryStore(CuratorFramework client, String historyPath, HistoryCodec codec, PipelinedReader reader, boolean standalone) {
+        this.client = client;
+        this.historyPath = historyPath;
+        this.codec = codec;
+        this.reader = reader;
+        this.standalone = standalone;
+    }
+
+    static String encodeId(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reverses {@link #encodeId}; throws IllegalArgumentException for names that are not valid Base64.
+     */
+    static String decodeId(String name) {
+        return new String(Base64.getUrlDecoder().decode(name), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void ensureExists() throws Exception {
+        if (client.checkExists().forPath(historyPath) == null) {
+            client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(historyPath);
+        }
+    }
+
+    @Override
+    public List<String> loadIds() throws Exception {
+        ensureExists();
+        return new ArrayList<>(listEntries().values());
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> loadAll() throws Exception {
+        ensureExists();
+        return load(listEntries());
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> lookup(Collection<String> ids) throws Exception {
+        verifyLayout();
+        Map<String, String> idsByPath = new LinkedHashMap<>();
+        for (String id : ids) {
+            idsByPath.put(historyPath + "/" + encodeId(id), id);
+        }
+        return load(idsByPath);
+    }
+
+    /**
+     * Reads and decodes the given per-changeset nodes, keyed by changeset id.
+     */
+    Map<String, MigrationStateService.ExecutedChangeSet> load(Map<String, String> idsByPath) throws Exception {
+        Map<String, byte[]> dataByPath = reader.readData(idsByPath.keySet());
+        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : dataByPath.entrySet()) {
+            try {
+                MigrationStateService.ExecutedChangeSet executed = codec.decode(entry.getValue(), MigrationStateService.ExecutedChangeSet.class);
+                executedMap.put(idsByPath.get(entry.getKey()), executed);
+            } catch (Exception e) {
+                log.warn("Failed to read history node: {}", entry.getKey(), e);
+            }
+        }
+        return executedMap;
+    }
+
+    @Override
+    public long estimateSize() throws Exception {
+        Stat stat = client.checkExists().forPath(historyPath);
+        return stat != null ? stat.getNumChildren() : 0;
+    }
+
+    private void verifyLayout() throws Exception {
+        if (!standalone || layoutVerified) {
+            return;
+        }
+        Set<String> foreign = reader.exists(List.of(
+                historyPath + "/" + SnapshotHistoryStore.SNAPSHOT_NODE,
+                historyPath + "/" + ShardedHistoryStore.SHARD_PREFIX + "00"));
+        if (!foreign.isEmpty()) {
+            throw new IllegalStateException("History at " + historyPath + " was converted to another layout (found " + foreign.iterator().next() + ")");
+        }
+        layoutVerified = true;
+    }
+
+    /**
+     * Maps the full path of every per-changeset node to its decoded id. Children
+     * whose names start with '.' belong to other layouts and are skipped.
+     */
+    Map<String, String> listEntries() throws Exception {
+        List<String> children = client.getChildren().forPath(historyPath);
+        Map<String, String> idsByPath = new LinkedHashMap<>();
+        layoutVerified = true;
+        for (String child : children) {
+            if (child.startsWith(".")) {
+                if (standalone && (child.equals(SnapshotHistoryStore.SNAPSHOT_NODE) || child.startsWith(ShardedHistoryStore.SHARD_PREFIX))) {
+                    throw new IllegalStateException("History at " + historyPath + " was converted to another layout (found " + child + ")");
+                }
+                continue;
+            }
+            try {
+                idsByPath.put(historyPath + "/" + child, decodeId(child));
+            } catch (IllegalArgumentException e) {
+                log.warn("Found invalid node in history path: {}", child);
+            }
+        }
+        return idsByPath;
+    }
+
+    @Override
+    public void put(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        ensureExists();
+        verifyLayout();
+        String nodePath = historyPath + "/" + encodeId(executed.id);
+        byte[] data = codec.encode(executed);
+
+        try {
+            client.create().withMode(CreateMode.PERSISTENT).forPath(nodePath, data);
+        } catch (KeeperException.NodeExistsException e) {
+            // Touching the history node keeps its Stat a complete version for HistoryCache
+            client.transaction().forOperations(
+                    client.transactionOp().setData().forPath(nodePath, data),
+                    client.transactionOp().setData().forPath(historyPath, new byte[0]));
+        }
+    }
+
+    @Override
+    public HistoryMarker prepare(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        ensureExists();
+        String nodePath = historyPath + "/" + encodeId(executed.id);
+        byte[] data = codec.encode(executed);
+        return new HistoryMarker(executed.id, List.of(client.transactionOp().create().forPath(nodePath, data)),
+                TransactionBatcher.estimateSize(nodePath, data), null);
+    }
+
+    @Override
+    public void remove(String id) throws Exception {
+        String nodePath = historyPath + "/" + encodeId(id);
+        try {
+            client.delete().forPath(nodePath);
+        } catch (KeeperException.NoNodeException e) {
+            // Ignored
+        }
+    }
+}
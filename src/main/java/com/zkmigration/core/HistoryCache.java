@@ -0,0 +1,85 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Local copy of a decoded history, valid for as long as the history node's
+ * {@link Stat} is unchanged. Every history write either adds or removes a child
+ * of the history node (changing cversion and pzxid) or sets its data (changing
+ * mzxid), so comparing those three fields is enough to detect another runner.
+ */
+@Slf4j
+class HistoryCache {
+    private final Path file;
+    private final ObjectMapper mapper;
+
+    HistoryCache(Path directory, String ensemble, String historyPath, ObjectMapper mapper) {
+        this.file = directory.resolve("history-" + digest(ensemble + historyPath) + ".json");
+        this.mapper = mapper;
+    }
+
+    static String versionOf(Stat stat) {
+        return stat.getMzxid() + "-" + stat.getCversion() + "-" + stat.getPzxid();
+    }
+
+    /**
+     * Returns the cached records if they were stored for the given version, or null.
+     */
+    Map<String, MigrationStateService.ExecutedChangeSet> read(String version) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            Entry entry = mapper.readValue(file.toFile(), Entry.class);
+            if (!version.equals(entry.version) || entry.records == null) {
+                log.debug("History cache {} is stale", file);
+                return null;
+            }
+            return new HashMap<>(entry.records);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable history cache {}", file, e);
+            return null;
+        }
+    }
+
+    void write(String version, Map<String, MigrationStateService.ExecutedChangeSet> records) {
+        Entry entry = new Entry();
+        entry.version = version;
+        entry.records = records;
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "history-", ".tmp");
+            mapper.writeValue(temp.toFile(), entry);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write history cache {}", file, e);
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Entry {
+        public String version;
+        public Map<String, MigrationStateService.ExecutedChangeSet> records;
+    }
+}
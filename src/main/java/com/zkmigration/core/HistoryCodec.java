@@ -0,0 +1,44 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encodes history records in the configured {@link HistoryEncoding}. Binary
+ * payloads start with {@link #SMILE_MARKER}, a byte that never starts a JSON
+ * document, so nodes written in either encoding can always be decoded.
+ */
+public class HistoryCodec {
+    static final byte SMILE_MARKER = 0x01;
+
+    private final HistoryEncoding encoding;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    public HistoryCodec(HistoryEncoding encoding) {
+        this.encoding = encoding;
+        this.jsonMapper = new ObjectMapper();
+        this.smileMapper = new ObjectMapper(new SmileFactory());
+    }
+
+    public byte[] encode(Object value) throws IOException {
+        if (encoding == HistoryEncoding.JSON) {
+            return jsonMapper.writeValueAsBytes(value);
+        }
+        byte[] smile = smileMapper.writeValueAsBytes(value);
+        byte[] data = new byte[smile.length + 1];
+        data[0] = SMILE_MARKER;
+        System.arraycopy(smile, 0, data, 1, smile.length);
+        return data;
+    }
+
+    public <T> T decode(byte[] data, Class<T> type) throws IOException {
+        if (data.length > 0 && data[0] == SMILE_MARKER) {
+            return smileMapper.readValue(data, 1, data.length - 1, type);
+        }
+        return jsonMapper.readValue(data, type);
+    }
+}
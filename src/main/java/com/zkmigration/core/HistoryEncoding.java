@@ -0,0 +1,8 @@
+package com.zkmigration.core;
+
+public enum HistoryEncoding {
+    /** Plain JSON, readable by every version of the tool. */
+    JSON,
+    /** Jackson Smile binary JSON behind a marker byte; smaller and faster to parse. */
+    SMILE
+}
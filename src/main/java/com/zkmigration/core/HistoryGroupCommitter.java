@@ -0,0 +1,76 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the history markers of changesets whose changes are already
+ * applied and writes them in batched multi transactions. A marker is only
+ * handed over after its changes succeeded, so a crash can lose markers (the
+ * changesets run again) but never record a changeset that was not applied.
+ */
+@Slf4j
+class HistoryGroupCommitter {
+    private final CuratorFramework client;
+    private final int maxMarkers;
+    private final long maxDelayMillis;
+    private final int maxBytes;
+    private final List<HistoryMarker> pending = new ArrayList<>();
+    private long oldestPendingAt;
+
+    HistoryGroupCommitter(CuratorFramework client, int maxMarkers, long maxDelayMillis, int maxBytes) {
+        this.client = client;
+        this.maxMarkers = maxMarkers;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    void add(HistoryMarker marker) throws Exception {
+        if (pending.isEmpty()) {
+            oldestPendingAt = System.currentTimeMillis();
+        }
+        pending.add(marker);
+        if (pending.size() >= maxMarkers || System.currentTimeMillis() - oldestPendingAt >= maxDelayMillis) {
+            flush();
+        }
+    }
+
+    void flush() throws Exception {
+        List<HistoryMarker> batch = new ArrayList<>();
+        List<CuratorOp> ops = new ArrayList<>();
+        int bytes = 0;
+        for (HistoryMarker marker : new ArrayList<>(pending)) {
+            if (!batch.isEmpty() && (bytes + marker.getEstimatedSize() > maxBytes
+                    || ops.size() + marker.getOps().size() > TransactionBatcher.DEFAULT_MAX_OPS)) {
+                commit(batch, ops);
+                batch.clear();
+                ops.clear();
+                bytes = 0;
+            }
+            batch.add(marker);
+            ops.addAll(marker.getOps());
+            bytes += marker.getEstimatedSize();
+        }
+        if (!batch.isEmpty()) {
+            commit(batch, ops);
+        }
+    }
+
+    private void commit(List<HistoryMarker> batch, List<CuratorOp> ops) throws Exception {
+        List<CuratorTransactionResult> results = client.transaction().forOperations(ops);
+        // Drop the committed markers before notifying, so a failing listener cannot cause a second write
+        pending.subList(0, batch.size()).clear();
+        log.debug("Committed {} history markers in one transaction", batch.size());
+        int offset = 0;
+        for (HistoryMarker marker : batch) {
+            int size = marker.getOps().size();
+            marker.committed(results.subList(offset, offset + size));
+            offset += size;
+        }
+    }
+}
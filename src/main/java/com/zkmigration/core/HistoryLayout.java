@@ -0,0 +1,10 @@
+package com.zkmigration.core;
+
+public enum HistoryLayout {
+    /** One Base64-named child znode per executed changeset. */
+    FLAT,
+    /** Compressed, chunked snapshot plus small append segments that are compacted into it. */
+    SNAPSHOT,
+    /** Flat-style per-changeset nodes spread over hash-prefix shard directories. */
+    SHARDED
+}
@@ -0,0 +1,52 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The operations that record one executed changeset, ready to be committed in
+ * the same multi transaction as the changeset's own changes.
+ */
+public class HistoryMarker {
+    @Getter
+    private final String id;
+    @Getter
+    private final List<CuratorOp> ops;
+    @Getter
+    private final int estimatedSize;
+    private final CommitListener listener;
+
+    HistoryMarker(String id, List<CuratorOp> ops, int estimatedSize, CommitListener listener) {
+        this.id = id;
+        this.ops = ops;
+        this.estimatedSize = estimatedSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns a marker that also commits the given operation.
+     */
+    HistoryMarker including(CuratorOp op, int size) {
+        List<CuratorOp> combined = new ArrayList<>(ops);
+        combined.add(op);
+        return new HistoryMarker(id, combined, estimatedSize + size, listener);
+    }
+
+    /**
+     * Must be called with the results of the transaction that carried {@link #getOps()}.
+     */
+    public void committed(List<CuratorTransactionResult> results) throws Exception {
+        if (listener != null) {
+            listener.committed(results);
+        }
+    }
+
+    @FunctionalInterface
+    interface CommitListener {
+        void committed(List<CuratorTransactionResult> results) throws Exception;
+    }
+}
@@ -0,0 +1,35 @@
+package com.zkmigration.core;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Storage strategy for the execution history kept under the changelog root.
+ */
+interface HistoryStore {
+    void ensureExists() throws Exception;
+
+    Collection<String> loadIds() throws Exception;
+
+    Map<String, MigrationStateService.ExecutedChangeSet> loadAll() throws Exception;
+
+    /**
+     * Loads only the given ids; ids that were never executed are absent from the result.
+     */
+    Map<String, MigrationStateService.ExecutedChangeSet> lookup(Collection<String> ids) throws Exception;
+
+    /**
+     * Approximate number of records, from node Stats only. Zero when per-id
+     * lookups would not be cheaper than {@link #loadAll()}.
+     */
+    long estimateSize() throws Exception;
+
+    void put(MigrationStateService.ExecutedChangeSet executed) throws Exception;
+
+    /**
+     * Builds the operations equivalent to {@link #put} without running them.
+     */
+    HistoryMarker prepare(MigrationStateService.ExecutedChangeSet executed) throws Exception;
+
+    void remove(String id) throws Exception;
+}
@@ -3,6 +3,7 @@ package com.zkmigration.core;
 import com.zkmigration.model.Change;
 import com.zkmigration.model.ChangeSet;
 import com.zkmigration.model.Create;
+import com.zkmigration.model.DataChange;
 import com.zkmigration.model.Delete;
 import com.zkmigration.model.Rename;
 import com.zkmigration.model.Update;
@@ -12,19 +13,220 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.CreateMode;
 
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 public class MigrationExecutor {
     private final CuratorFramework client;
+    private final MigrationOptions options;
+    private final PipelinedReader reader;
+    private final PathCache paths;
+    private final UnchangedWriteFilter unchangedWrites;
+    private final WriteThrottle throttle;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
 
     public MigrationExecutor(CuratorFramework client) {
+        this(client, new MigrationOptions());
+    }
+
+    public MigrationExecutor(CuratorFramework client, MigrationOptions options) {
         this.client = client;
+        this.options = options;
+        this.reader = new PipelinedReader(client, options.getMaxInFlightReads(), options.ioExecutor());
+        this.paths = new PathCache(client);
+        this.unchangedWrites = options.isSkipUnchangedWrites() ? new UnchangedWriteFilter(reader) : null;
+        this.throttle = WriteThrottle.of(options);
+    }
+
+    /**
+     * Changes applied and writes skipped because the node already held the data, since the run began.
+     */
+    public record WriteStats(long written, long skipped) {
+    }
+
+    /**
+     * Starts a new run: paths seen by earlier runs may have changed since and are forgotten.
+     */
+    void beginRun() {
+        paths.clear();
+        written.reset();
+        skipped.reset();
+        if (throttle != null) {
+            throttle.resetStats();
+        }
+    }
+
+    public WriteStats getWriteStats() {
+        return new WriteStats(written.sum(), skipped.sum());
+    }
+
+    /**
+     * Returns the throttling statistics since the run began, or null when writes are not throttled.
+     */
+    public WriteThrottle.Stats getThrottleStats() {
+        return throttle != null ? throttle.stats() : null;
     }
 
     public void execute(ChangeSet changeSet) throws Exception {
         log.info("Executing ChangeSet: {}", changeSet.getId());
-        for (Change change : changeSet.getChanges()) {
-            change.applyChange(client);
+        applyAll(changeSet.getChanges());
+    }
+
+    /**
+     * Applies the changes one by one like {@link #execute(ChangeSet)}, starting after
+     * the changes the progress says were applied and checkpointing as it goes.
+     */
+    void execute(ChangeSet changeSet, ChangeSetProgress progress) throws Exception {
+        List<Change> changes = changeSet.getChanges();
+        int from = progress.resume(changes);
+        if (from > 0) {
+            log.info("Resuming ChangeSet {} at change {} of {}", changeSet.getId(), from + 1, changes.size());
+        } else {
+            log.info("Executing ChangeSet: {}", changeSet.getId());
+        }
+        List<Change> remaining = changes.subList(from, changes.size());
+        PreparedPayloads payloads = new PreparedPayloads(remaining);
+        UnchangedWriteFilter.Prefetched unchanged = prefetchUnchanged(remaining);
+        try {
+            for (Change change : remaining) {
+                applyUnlessUnchanged(change, payloads, unchanged);
+                progress.completed(change);
+            }
+        } catch (Exception e) {
+            // Record the changes completed since the last checkpoint, unless the connection is gone too
+            try {
+                progress.checkpoint();
+            } catch (Exception checkpointFailure) {
+                e.addSuppressed(checkpointFailure);
+            }
+            throw e;
+        }
+    }
+
+    private void applyAll(List<Change> changes) throws Exception {
+        PreparedPayloads payloads = new PreparedPayloads(changes);
+        UnchangedWriteFilter.Prefetched unchanged = prefetchUnchanged(changes);
+        for (Change change : changes) {
+            applyUnlessUnchanged(change, payloads, unchanged);
+        }
+    }
+
+    private void applyUnlessUnchanged(Change change, PreparedPayloads payloads, UnchangedWriteFilter.Prefetched unchanged) throws Exception {
+        if (unchanged != null && unchanged.unchanged(change, payloads)) {
+            skipped.increment();
+        } else {
+            apply(change, payloads);
+        }
+    }
+
+    private void apply(Change change, PreparedPayloads payloads) throws Exception {
+        if (throttle != null) {
+            throttle.acquire(1, WriteThrottle.estimateBytes(change));
+        }
+        long start = System.nanoTime();
+        if (change instanceof DataChange dataChange) {
+            dataChange.applyChange(client, paths, payloads.take(dataChange));
+        } else {
+            change.applyChange(client, paths);
+        }
+        if (throttle != null) {
+            throttle.recordLatency(System.nanoTime() - start, 1);
+        }
+        written.increment();
+    }
+
+    /**
+     * Applies the changeset's changes with up to {@link MigrationOptions#getMaxInFlightWrites()}
+     * asynchronous writes in flight. On failure, in-flight writes are drained and a
+     * {@link PipelineExecutionException} reports which changes completed.
+     */
+    public void executePipelined(ChangeSet changeSet) throws Exception {
+        log.info("Executing ChangeSet pipelined: {}", changeSet.getId());
+        List<Change> changes = changeSet.getChanges();
+        PreparedPayloads payloads = new PreparedPayloads(changes);
+        UnchangedWriteFilter.Prefetched unchanged = prefetchUnchanged(changes);
+        try {
+            new PipelinedChangeExecutor(client, options.getMaxInFlightWrites(), options.ioExecutor(), throttle)
+                    .execute(changeSet.getId(), changes, payloads, unchanged);
+            written.add(changes.size() - (unchanged != null ? unchanged.skipped() : 0));
+        } finally {
+            if (unchanged != null) {
+                skipped.add(unchanged.skipped());
+            }
+            forgetRemoved(changes);
+        }
+    }
+
+    /**
+     * Commits the changeset's changes and its history marker in one multi transaction.
+     * A changeset too large for {@link MigrationOptions#getMaxTransactionBytes()} is
+     * split into several transactions with the marker in the last one, so it is
+     * never recorded before all of its changes are applied.
+     */
+    public void executeAtomically(ChangeSet changeSet, HistoryMarker marker) throws Exception {
+        log.info("Executing ChangeSet atomically: {}", changeSet.getId());
+        PreparedPayloads payloads = new PreparedPayloads(changeSet.getChanges());
+        List<Change> changes = skipUnchanged(changeSet.getChanges(), payloads);
+        String unsupported = TransactionCompiler.unsupportedReason(changes);
+        if (unsupported != null) {
+            log.info("ChangeSet {} cannot run as one transaction ({}), applying changes one by one", changeSet.getId(), unsupported);
+            for (Change change : changes) {
+                apply(change, payloads);
+            }
+            marker.committed(client.transaction().forOperations(marker.getOps()));
+            return;
+        }
+        List<TransactionCompiler.CompiledOp> ops = TransactionCompiler.compile(client, reader, changes, payloads);
+
+        int totalBytes = marker.getEstimatedSize();
+        for (TransactionCompiler.CompiledOp op : ops) {
+            totalBytes += op.size();
+        }
+        int totalOps = ops.size() + marker.getOps().size();
+        if (totalBytes > options.getMaxTransactionBytes() || totalOps > TransactionBatcher.DEFAULT_MAX_OPS) {
+            log.warn("ChangeSet {} is too large for one transaction ({} operations, ~{} bytes); committing it in several",
+                    changeSet.getId(), totalOps, totalBytes);
+        }
+
+        TransactionBatcher batcher = new TransactionBatcher(client, options.getMaxTransactionBytes(), TransactionBatcher.DEFAULT_MAX_OPS, throttle);
+        for (TransactionCompiler.CompiledOp op : ops) {
+            batcher.add(op.op(), op.size());
+        }
+        batcher.addAll(marker.getOps(), marker.getEstimatedSize());
+        try {
+            marker.committed(batcher.flush());
+            written.add(changes.size());
+        } finally {
+            forgetRemoved(changes);
+        }
+        log.debug("ChangeSet {} committed in {} transaction(s)", changeSet.getId(), batcher.getTransactions());
+    }
+
+    private UnchangedWriteFilter.Prefetched prefetchUnchanged(List<Change> changes) throws Exception {
+        return unchangedWrites != null ? unchangedWrites.prefetch(changes) : null;
+    }
+
+    /**
+     * Drops unchanged writes up front, for a transaction that needs every payload before it commits.
+     */
+    private List<Change> skipUnchanged(List<Change> changes, PreparedPayloads payloads) throws Exception {
+        if (unchangedWrites == null) {
+            return changes;
+        }
+        UnchangedWriteFilter.Result result = unchangedWrites.filter(changes, payloads);
+        skipped.add(result.skipped());
+        return result.changes();
+    }
+
+    /**
+     * Forgets the paths removed by changes that bypassed the path cache.
+     */
+    private void forgetRemoved(List<Change> changes) {
+        for (Change change : changes) {
+            if (change instanceof Delete || change instanceof Rename) {
+                paths.removed(change.getPath());
+            }
         }
     }
 
@@ -36,8 +238,6 @@ public class MigrationExecutor {
             return;
         }
 
-        for (Change change : rollbackChanges) {
-            change.applyChange(client);
-        }
+        applyAll(rollbackChanges);
     }
 }
@@ -3,14 +3,28 @@ package com.zkmigration.core;
 import com.zkmigration.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.data.Stat;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class MigrationInspector {
     private final CuratorFramework client;
+    private final ExecutorService ioExecutor;
 
     public MigrationInspector(CuratorFramework client) {
+        this(client, null);
+    }
+
+    /**
+     * With an executor, the changes of a changeset are inspected concurrently on it;
+     * the report keeps the changes' order.
+     */
+    public MigrationInspector(CuratorFramework client, ExecutorService ioExecutor) {
         this.client = client;
+        this.ioExecutor = ioExecutor;
     }
 
     public String inspect(ChangeSet changeSet, boolean isRollback) throws Exception {
@@ -27,6 +41,16 @@ public class MigrationInspector {
         }
 
         ChangeVisitor<String> visitor = new InspectionVisitor(client);
+        if (ioExecutor != null) {
+            List<Future<String>> sections = new ArrayList<>();
+            for (Change change : changes) {
+                sections.add(ioExecutor.submit(() -> change.accept(visitor)));
+            }
+            for (Future<String> section : sections) {
+                report.append(section.get()).append("\n");
+            }
+            return report.toString();
+        }
         for (Change change : changes) {
             report.append(change.accept(visitor)).append("\n");
         }
@@ -64,7 +88,9 @@ public class MigrationInspector {
                     byte[] newData = MigrationUtils.resolveData(update.getData(), update.getFile());
                     out.append(DiffGenerator.generateDiff(null, newData));
                 } else {
-                    byte[] oldData = client.getData().forPath(update.getPath());
+                    Stat stat = new Stat();
+                    byte[] oldData = ChunkedValues.read(client, update.getPath(), stat);
+                    appendVersionWarning(out, update.getExpectedVersion(), stat);
                     byte[] newData = MigrationUtils.resolveData(update.getData(), update.getFile());
                     out.append(DiffGenerator.generateDiff(oldData, newData));
                 }
@@ -79,11 +105,21 @@ public class MigrationInspector {
         public String visit(Delete delete) {
             StringBuilder out = new StringBuilder();
             try {
+                if (Boolean.TRUE.equals(delete.getRecursive())) {
+                    out.append("DELETE TREE ").append(delete.getPath()).append("\n");
+                    if (client.checkExists().forPath(delete.getPath()) == null) {
+                        out.append("WARNING: Node does not exist!\n");
+                    } else {
+                        SubtreeEngine.Stats stats = new SubtreeEngine(client).measure(delete.getPath());
+                        out.append("Would remove ").append(stats.nodes()).append(" nodes (").append(stats.bytes()).append(" bytes)\n");
+                    }
+                    return out.toString();
+                }
                 out.append("DELETE ").append(delete.getPath()).append("\n");
                 if (client.checkExists().forPath(delete.getPath()) == null) {
                     out.append("WARNING: Node does not exist!\n");
                 } else {
-                    byte[] oldData = client.getData().forPath(delete.getPath());
+                    byte[] oldData = ChunkedValues.read(client, delete.getPath(), null);
                     out.append(DiffGenerator.generateDiff(oldData, null));
                 }
             } catch (Exception e) {
@@ -111,6 +147,42 @@ public class MigrationInspector {
             return out.toString();
         }
 
+        @Override
+        public String visit(Copy copy) {
+            StringBuilder out = new StringBuilder();
+            try {
+                out.append("COPY ").append(copy.getPath()).append(" -> ").append(copy.getDestination()).append("\n");
+                if (client.checkExists().forPath(copy.getPath()) == null) {
+                    out.append("WARNING: Source node does not exist!\n");
+                }
+                if (client.checkExists().forPath(copy.getDestination()) != null) {
+                    out.append("WARNING: Destination node already exists!\n");
+                }
+            } catch (Exception e) {
+                log.error("Error inspecting Copy", e);
+                out.append("Error inspecting Copy: ").append(e.getMessage());
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String visit(Import anImport) {
+            StringBuilder out = new StringBuilder();
+            try {
+                String source = anImport.getDirectory() != null ? anImport.getDirectory() : anImport.getDocument();
+                out.append("IMPORT ").append(source).append(" -> ").append(anImport.getPath()).append("\n");
+                TreeImporter.Stats stats = new TreeImporter(client).plan(
+                        TreeImporter.expand(anImport.getPath(), anImport.getDirectory(), anImport.getDocument()));
+                out.append("Would create ").append(stats.created()).append(", update ").append(stats.updated())
+                        .append(" and leave ").append(stats.unchanged()).append(" of ").append(stats.nodes())
+                        .append(" nodes unchanged (").append(stats.bytes()).append(" bytes)\n");
+            } catch (Exception e) {
+                log.error("Error inspecting Import", e);
+                out.append("Error inspecting Import: ").append(e.getMessage());
+            }
+            return out.toString();
+        }
+
         @Override
         public String visit(Upsert upsert) {
             StringBuilder out = new StringBuilder();
@@ -118,7 +190,9 @@ public class MigrationInspector {
                 out.append("UPSERT ").append(upsert.getPath()).append("\n");
                 byte[] newData = MigrationUtils.resolveData(upsert.getData(), upsert.getFile());
                 if (client.checkExists().forPath(upsert.getPath()) != null) {
-                    byte[] oldData = client.getData().forPath(upsert.getPath());
+                    Stat stat = new Stat();
+                    byte[] oldData = ChunkedValues.read(client, upsert.getPath(), stat);
+                    appendVersionWarning(out, upsert.getExpectedVersion(), stat);
                     out.append(DiffGenerator.generateDiff(oldData, newData));
                 } else {
                     out.append(DiffGenerator.generateDiff(null, newData));
@@ -129,5 +203,12 @@ public class MigrationInspector {
             }
             return out.toString();
         }
+
+        private static void appendVersionWarning(StringBuilder out, Integer expectedVersion, Stat stat) {
+            if (expectedVersion != null && expectedVersion != stat.getVersion()) {
+                out.append("WARNING: Expected version ").append(expectedVersion)
+                        .append(" but node is at version ").append(stat.getVersion()).append("\n");
+            }
+        }
     }
 }
@@ -0,0 +1,61 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Tuning knobs shared by {@link MigrationService} and the services it creates.
+ * The defaults reproduce the tool's original behaviour.
+ */
+@Setter
+@Getter
+public class MigrationOptions {
+    private HistoryLayout historyLayout = HistoryLayout.FLAT;
+    private ThreadingMode threadingMode = ThreadingMode.PLATFORM;
+    /** Run up to this many non-conflicting changesets at once; 1 runs them strictly in order. */
+    private int changeSetParallelism = 1;
+    /** Encoding of new history records; existing records decode in either encoding. */
+    private HistoryEncoding historyEncoding = HistoryEncoding.JSON;
+    private ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+    /** Upper bound for one multi transaction; keep it below the ensemble's jute.maxbuffer. */
+    private int maxTransactionBytes = TransactionBatcher.DEFAULT_MAX_BYTES;
+    private int maxInFlightReads = PipelinedReader.DEFAULT_MAX_IN_FLIGHT;
+    private int maxInFlightWrites = 256;
+    /** Upper bounds for writes per second and bytes written per second; 0 leaves them unlimited. */
+    private double maxWriteOpsPerSecond;
+    private long maxWriteBytesPerSecond;
+    /** Cut the write rate and transaction size while the ensemble's write latency is elevated. */
+    private boolean adaptiveThrottling;
+    /** Skip updates and upserts whose data already matches the node, instead of writing it again. */
+    private boolean skipUnchangedWrites;
+    /**
+     * Outside {@link ExecutionMode#TRANSACTIONAL} mode, write history markers in groups of
+     * up to this many changesets, or once the oldest pending marker is older than
+     * {@link #groupCommitIntervalMillis}; 1 writes every marker immediately.
+     */
+    private int groupCommitSize = 1;
+    private long groupCommitIntervalMillis = 1000;
+    /**
+     * In {@link ExecutionMode#SEQUENTIAL} mode, checkpoint a changeset's progress every
+     * this many changes so a failed run resumes where it stopped; 0 disables.
+     */
+    private int checkpointInterval;
+    private int snapshotCompactionInterval = 100;
+    /**
+     * Look changesets up by id instead of loading the whole history when the
+     * changelog has at most this fraction of the history's entries; 0 disables.
+     */
+    private double targetedLookupRatio = 0.5;
+    /** Directory for the local history cache; caching is disabled when null. */
+    private Path historyCacheDirectory;
+
+    /**
+     * The executor for blocking I/O, or null when I/O goes through Curator callbacks.
+     */
+    ExecutorService ioExecutor() {
+        return threadingMode == ThreadingMode.VIRTUAL ? VirtualThreads.executor() : null;
+    }
+}
@@ -8,10 +8,15 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.recipes.locks.InterProcessMutex;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -19,14 +24,24 @@ public class MigrationService {
     private final CuratorFramework client;
     private final MigrationStateService stateService;
     private final MigrationExecutor executor;
+    private final MigrationOptions options;
     private final String lockPath;
+    private final String progressPath;
+    private Map<ChangeSet, String> sharedChecksums = Map.of();
+    private BooleanSupplier stopRequested = () -> false;
 
     public MigrationService(CuratorFramework client, String rootPath) {
+        this(client, rootPath, new MigrationOptions());
+    }
+
+    public MigrationService(CuratorFramework client, String rootPath, MigrationOptions options) {
         this.client = client;
         String historyPath = rootPath + "/changelog";
         this.lockPath = rootPath + "/lock";
-        this.stateService = new MigrationStateService(client, historyPath);
-        this.executor = new MigrationExecutor(client);
+        this.progressPath = rootPath + "/progress";
+        this.stateService = new MigrationStateService(client, historyPath, options);
+        this.executor = new MigrationExecutor(client, options);
+        this.options = options;
     }
 
     public void update(ChangeLog changeLog, String executionEnvironment, List<String> executionLabels) throws Exception {
@@ -38,59 +53,187 @@ public class MigrationService {
 
         try {
             log.info("Lock acquired. Checking for migrations...");
-            Map<String, MigrationStateService.ExecutedChangeSet> executedMap = stateService.getExecutedChangeSets();
+            executor.beginRun();
+            List<ChangeSet> changeSets = extractChangeSets(changeLog);
+            Map<String, MigrationStateService.ExecutedChangeSet> executedMap = loadHistory(changeSets);
             Set<String> executedInThisRun = new HashSet<>();
+            HistoryGroupCommitter groupCommitter = options.getGroupCommitSize() > 1
+                    ? new HistoryGroupCommitter(client, options.getGroupCommitSize(), options.getGroupCommitIntervalMillis(), options.getMaxTransactionBytes())
+                    : null;
+            // With parallelism, changesets are only validated here and run afterwards by the scheduler
+            List<ChangeSet> scheduled = options.getChangeSetParallelism() > 1 ? new ArrayList<>() : null;
+            Map<String, String> checksums = new HashMap<>();
+
+            // Validation failures too must record the changesets applied before them
+            try {
+                for (ChangeSet cs : changeSets) {
+                    // Check for duplicate ID in current run
+                    if (executedInThisRun.contains(cs.getId())) {
+                        throw new DuplicateChangeSetIdException("Duplicate ChangeSet ID detected in this run: " + cs.getId());
+                    }
 
-            List<ChangeSet> changeSets = extractChangeSets(changeLog);
+                    // Calculate Checksum
+                    String currentChecksum = checksumOf(cs);
 
-            for (ChangeSet cs : changeSets) {
-                // Check for duplicate ID in current run
-                if (executedInThisRun.contains(cs.getId())) {
-                    throw new DuplicateChangeSetIdException("Duplicate ChangeSet ID detected in this run: " + cs.getId());
-                }
+                    // Check if already executed (in history)
+                    if (executedMap.containsKey(cs.getId())) {
+                        MigrationStateService.ExecutedChangeSet executed = executedMap.get(cs.getId());
 
-                // Calculate Checksum
-                String currentChecksum = ChecksumUtil.calculateChecksum(cs);
+                        // Verify Checksum
+                        verifyChecksum(cs, currentChecksum, executed.checksum);
 
-                // Check if already executed (in history)
-                if (executedMap.containsKey(cs.getId())) {
-                    MigrationStateService.ExecutedChangeSet executed = executedMap.get(cs.getId());
+                        log.debug("ChangeSet {} already executed. Skipping.", cs.getId());
+                        // Even if skipped, we mark it as seen in this run to prevent duplicate ID re-use
+                        executedInThisRun.add(cs.getId());
+                        continue;
+                    }
 
-                    // Verify Checksum
-                    verifyChecksum(cs, currentChecksum, executed.checksum);
+                    // Check Environment and Labels
+                    if (!shouldRun(cs, executionEnvironment, executionLabels, changeLog.getEnvironmentsGroups())) {
+                        log.debug("ChangeSet {} ignored due to environment/label mismatch.", cs.getId());
+                        continue;
+                    }
 
-                    log.debug("ChangeSet {} already executed. Skipping.", cs.getId());
-                    // Even if skipped, we mark it as seen in this run to prevent duplicate ID re-use
-                    executedInThisRun.add(cs.getId());
-                    continue;
-                }
+                    if (scheduled != null) {
+                        scheduled.add(cs);
+                        checksums.put(cs.getId(), currentChecksum);
+                        executedInThisRun.add(cs.getId());
+                        continue;
+                    }
 
-                // Check Environment and Labels
-                if (!shouldRun(cs, executionEnvironment, executionLabels, changeLog.getEnvironmentsGroups())) {
-                    log.debug("ChangeSet {} ignored due to environment/label mismatch.", cs.getId());
-                    continue;
+                    ensureNotStopped();
+                    applyChangeSet(cs, currentChecksum, groupCommitter);
+                    executedInThisRun.add(cs.getId());
                 }
+            } catch (Exception e) {
+                flushAfterFailure(groupCommitter, e);
+                throw e;
+            }
 
-                log.info("Applying ChangeSet: {}", cs.getId());
+            if (scheduled != null) {
+                // Changesets wait on their own I/O, so they only share the executor when it has a thread per task
+                boolean virtual = options.ioExecutor() != null && VirtualThreads.isAvailable();
+                ExecutorService pool = virtual ? options.ioExecutor() : new ForkJoinPool(options.getChangeSetParallelism());
                 try {
-                    executor.execute(cs);
-                    stateService.markChangeSetExecuted(cs.getId(), cs.getAuthor(), "Executed by ZkMigration", currentChecksum);
-
-                    // Add to tracked sets
-                    executedInThisRun.add(cs.getId());
-                    executedMap.put(cs.getId(), new MigrationStateService.ExecutedChangeSet(cs.getId(), cs.getAuthor(), System.currentTimeMillis(), currentChecksum));
-
-                    log.info("ChangeSet {} applied successfully.", cs.getId());
+                    new ChangeSetScheduler(pool, options.getChangeSetParallelism())
+                            .run(scheduled, cs -> {
+                                ensureNotStopped();
+                                applyChangeSet(cs, checksums.get(cs.getId()), groupCommitter);
+                            });
                 } catch (Exception e) {
-                    log.error("Failed to apply ChangeSet {}", cs.getId(), e);
+                    flushAfterFailure(groupCommitter, e);
                     throw e;
+                } finally {
+                    if (!virtual) {
+                        pool.shutdown();
+                    }
                 }
             }
+
+            if (groupCommitter != null) {
+                groupCommitter.flush();
+            }
+            logWriteStats();
         } finally {
             lock.release();
         }
     }
 
+    /**
+     * Uses checksums computed once for changesets shared with other services, such as those of a fan-out.
+     */
+    void shareChecksums(Map<ChangeSet, String> checksums) {
+        this.sharedChecksums = checksums;
+    }
+
+    /**
+     * Makes update stop before its next changeset once the condition holds.
+     */
+    void stopWhen(BooleanSupplier condition) {
+        this.stopRequested = condition;
+    }
+
+    private void ensureNotStopped() {
+        if (stopRequested.getAsBoolean()) {
+            throw new CancellationException("Update stopped before its next changeset");
+        }
+    }
+
+    private String checksumOf(ChangeSet cs) {
+        String checksum = sharedChecksums.get(cs);
+        return checksum != null ? checksum : ChecksumUtil.calculateChecksum(cs);
+    }
+
+    /**
+     * Returns the write counts of the last update or rollback.
+     */
+    public MigrationExecutor.WriteStats getWriteStats() {
+        return executor.getWriteStats();
+    }
+
+    private void logWriteStats() {
+        MigrationExecutor.WriteStats stats = executor.getWriteStats();
+        log.info("{} change(s) written, {} skipped because the node already held the data", stats.written(), stats.skipped());
+        WriteThrottle.Stats throttling = executor.getThrottleStats();
+        if (throttling != null) {
+            log.info("Write throttling: {}", throttling);
+        }
+    }
+
+    private void applyChangeSet(ChangeSet cs, String checksum, HistoryGroupCommitter groupCommitter) throws Exception {
+        log.info("Applying ChangeSet: {}", cs.getId());
+        try {
+            if (options.getExecutionMode() == ExecutionMode.TRANSACTIONAL) {
+                executor.executeAtomically(cs, stateService.prepareMarker(cs.getId(), cs.getAuthor(), "Executed by ZkMigration", checksum));
+            } else {
+                ChangeSetProgress progress = null;
+                if (options.getExecutionMode() == ExecutionMode.PIPELINED) {
+                    executor.executePipelined(cs);
+                } else if (options.getCheckpointInterval() > 0) {
+                    progress = new ChangeSetProgress(client, progressPath, cs.getId(), options.getCheckpointInterval());
+                    executor.execute(cs, progress);
+                } else {
+                    executor.execute(cs);
+                }
+                if (groupCommitter != null) {
+                    HistoryMarker marker = stateService.prepareMarker(cs.getId(), cs.getAuthor(), "Executed by ZkMigration", checksum);
+                    if (progress != null) {
+                        marker = progress.clearedWith(marker);
+                    }
+                    synchronized (groupCommitter) {
+                        groupCommitter.add(marker);
+                    }
+                } else if (progress != null) {
+                    // The checkpoint goes away in the same transaction that records the changeset
+                    HistoryMarker marker = progress.clearedWith(stateService.prepareMarker(cs.getId(), cs.getAuthor(), "Executed by ZkMigration", checksum));
+                    marker.committed(client.transaction().forOperations(marker.getOps()));
+                } else {
+                    stateService.markChangeSetExecuted(cs.getId(), cs.getAuthor(), "Executed by ZkMigration", checksum);
+                }
+            }
+            log.info("ChangeSet {} applied successfully.", cs.getId());
+        } catch (Exception e) {
+            log.error("Failed to apply ChangeSet {}", cs.getId(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the changesets that were applied before a failure.
+     */
+    private void flushAfterFailure(HistoryGroupCommitter groupCommitter, Exception failure) {
+        if (groupCommitter == null) {
+            return;
+        }
+        try {
+            synchronized (groupCommitter) {
+                groupCommitter.flush();
+            }
+        } catch (Exception flushFailure) {
+            failure.addSuppressed(flushFailure);
+        }
+    }
+
     public void rollback(ChangeLog changeLog, int count) throws Exception {
         InterProcessMutex lock = new InterProcessMutex(client, lockPath);
 
@@ -100,6 +243,7 @@ public class MigrationService {
 
         try {
             log.info("Lock acquired. Processing rollback...");
+            executor.beginRun();
             List<ChangeSet> toRollback = getChangesetsToRollback(changeLog, count);
 
             if (toRollback.isEmpty()) {
@@ -118,19 +262,36 @@ public class MigrationService {
                     throw e;
                 }
             }
+            logWriteStats();
+        } finally {
+            lock.release();
+        }
+    }
 
+    public int convertHistory(HistoryLayout layout) throws Exception {
+        InterProcessMutex lock = new InterProcessMutex(client, lockPath);
+
+        if (!lock.acquire(60, TimeUnit.SECONDS)) {
+            throw new RuntimeException("Could not acquire lock at " + lockPath);
+        }
+
+        try {
+            log.info("Lock acquired. Converting history to the {} layout...", layout);
+            int records = stateService.convertTo(layout);
+            log.info("History converted: {} records.", records);
+            return records;
         } finally {
             lock.release();
         }
     }
 
     public boolean previewUpdate(ChangeLog changeLog, String executionEnvironment, List<String> executionLabels) throws Exception {
-        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = stateService.getExecutedChangeSets();
-        Set<String> executedInThisRun = new HashSet<>();
         List<ChangeSet> changeSets = extractChangeSets(changeLog);
+        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = loadHistory(changeSets);
+        Set<String> executedInThisRun = new HashSet<>();
 
         boolean hasChanges = false;
-        MigrationInspector inspector = new MigrationInspector(client);
+        MigrationInspector inspector = new MigrationInspector(client, options.ioExecutor());
         System.out.println("PREVIEW: UPCOMING MIGRATIONS");
         System.out.println("============================");
 
@@ -143,7 +304,7 @@ public class MigrationService {
             if (executedMap.containsKey(cs.getId())) {
                 // Already executed, verify checksum
                 MigrationStateService.ExecutedChangeSet executed = executedMap.get(cs.getId());
-                String currentChecksum = ChecksumUtil.calculateChecksum(cs);
+                String currentChecksum = checksumOf(cs);
                 try {
                     verifyChecksum(cs, currentChecksum, executed.checksum);
                 } catch (RuntimeException e) {
@@ -177,7 +338,7 @@ public class MigrationService {
             return false;
         }
 
-        MigrationInspector inspector = new MigrationInspector(client);
+        MigrationInspector inspector = new MigrationInspector(client, options.ioExecutor());
         System.out.println("PREVIEW: ROLLBACK MIGRATIONS");
         System.out.println("============================");
 
@@ -188,8 +349,8 @@ public class MigrationService {
     }
 
     private List<ChangeSet> getChangesetsToRollback(ChangeLog changeLog, int numberOfChangesetsToRollback) throws Exception {
-        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = stateService.getExecutedChangeSets();
         List<ChangeSet> changeSets = extractChangeSets(changeLog);
+        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = loadHistory(changeSets);
 
         List<ChangeSet> toRollback = new ArrayList<>();
         for (int i = changeSets.size() - 1; i >= 0; i--) {
@@ -205,6 +366,14 @@ public class MigrationService {
         return toRollback;
     }
 
+    private Map<String, MigrationStateService.ExecutedChangeSet> loadHistory(List<ChangeSet> changeSets) throws Exception {
+        Set<String> ids = new HashSet<>();
+        for (ChangeSet cs : changeSets) {
+            ids.add(cs.getId());
+        }
+        return stateService.getExecutedChangeSetsFor(ids);
+    }
+
     private void verifyChecksum(ChangeSet cs, String currentChecksum, String storedChecksum) {
         if (storedChecksum == null) {
             log.warn("ChangeSet {} has no stored checksum. Skipping validation.", cs.getId());
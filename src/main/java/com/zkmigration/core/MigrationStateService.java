@@ -3,65 +3,118 @@ package com.zkmigration.core;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.zookeeper.CreateMode;
-import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 
 @Slf4j
 public class MigrationStateService {
     private final CuratorFramework client;
     private final String historyPath;
     private final ObjectMapper mapper;
+    private final HistoryCodec codec;
+    private final PipelinedReader reader;
+    private final MigrationOptions options;
+    private final HistoryStore store;
+    private final HistoryCache cache;
 
     public MigrationStateService(CuratorFramework client, String historyPath) {
+        this(client, historyPath, new MigrationOptions());
+    }
+
+    public MigrationStateService(CuratorFramework client, String historyPath, int maxInFlightReads) {
+        this(client, historyPath, withMaxInFlightReads(maxInFlightReads));
+    }
+
+    public MigrationStateService(CuratorFramework client, String historyPath, MigrationOptions options) {
         this.client = client;
         this.historyPath = historyPath;
         this.mapper = new ObjectMapper();
+        this.codec = new HistoryCodec(options.getHistoryEncoding());
+        this.reader = new PipelinedReader(client, options.getMaxInFlightReads(), options.ioExecutor());
+        this.options = options;
+        this.store = createStore(options.getHistoryLayout());
+        this.cache = options.getHistoryCacheDirectory() == null ? null
+                : new HistoryCache(options.getHistoryCacheDirectory(), ensembleOf(client), historyPath, mapper);
+    }
+
+    private static String ensembleOf(CuratorFramework client) {
+        String namespace = client.getNamespace();
+        return client.getZookeeperClient().getCurrentConnectionString() + (namespace != null ? "/" + namespace : "");
+    }
+
+    private static MigrationOptions withMaxInFlightReads(int maxInFlightReads) {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxInFlightReads(maxInFlightReads);
+        return options;
+    }
+
+    private HistoryStore createStore(HistoryLayout layout) {
+        return switch (layout) {
+            case FLAT -> new FlatHistoryStore(client, historyPath, codec, reader, true);
+            case SNAPSHOT -> new SnapshotHistoryStore(client, historyPath, codec, reader, options.getSnapshotCompactionInterval());
+            case SHARDED -> new ShardedHistoryStore(client, historyPath, codec, reader);
+        };
     }
 
     public void ensureHistoryPathExists() throws Exception {
-        if (client.checkExists().forPath(historyPath) == null) {
-            client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(historyPath);
-        }
+        store.ensureExists();
     }
 
     public List<String> getExecutedChangeSetIds() throws Exception {
-        ensureHistoryPathExists();
-        List<String> children = client.getChildren().forPath(historyPath);
-        java.util.List<String> decodedIds = new java.util.ArrayList<>();
-        for (String child : children) {
-            try {
-                byte[] bytes = java.util.Base64.getUrlDecoder().decode(child);
-                decodedIds.add(new String(bytes, java.nio.charset.StandardCharsets.UTF_8));
-            } catch (IllegalArgumentException e) {
-                log.warn("Found invalid node in history path: {}", child);
-            }
+        if (cache != null) {
+            return new ArrayList<>(getExecutedChangeSets().keySet());
         }
-        return decodedIds;
+        return new ArrayList<>(store.loadIds());
     }
 
     // New method to retrieve full execution details, mapped by ID
     public Map<String, ExecutedChangeSet> getExecutedChangeSets() throws Exception {
-        ensureHistoryPathExists();
-        List<String> children = client.getChildren().forPath(historyPath);
-        Map<String, ExecutedChangeSet> executedMap = new HashMap<>();
-
-        for (String child : children) {
-             try {
-                byte[] bytes = java.util.Base64.getUrlDecoder().decode(child);
-                String id = new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
-
-                byte[] data = client.getData().forPath(historyPath + "/" + child);
-                ExecutedChangeSet executed = mapper.readValue(data, ExecutedChangeSet.class);
-                executedMap.put(id, executed);
-            } catch (Exception e) {
-                log.warn("Failed to read history node: {}", child, e);
+        if (cache == null) {
+            return store.loadAll();
+        }
+
+        // The Stat is read before the history, so a concurrent write can only make the cache look stale
+        Stat stat = client.checkExists().forPath(historyPath);
+        if (stat != null) {
+            String version = HistoryCache.versionOf(stat);
+            Map<String, ExecutedChangeSet> cached = cache.read(version);
+            if (cached != null) {
+                log.debug("History at {} unchanged since version {}, using local cache", historyPath, version);
+                return cached;
             }
+            Map<String, ExecutedChangeSet> loaded = store.loadAll();
+            cache.write(version, loaded);
+            return loaded;
         }
-        return executedMap;
+        return store.loadAll();
+    }
+
+    /**
+     * Loads the records of the given ids only, touching just the nodes that can hold them.
+     */
+    public Map<String, ExecutedChangeSet> getExecutedChangeSets(Collection<String> ids) throws Exception {
+        return store.lookup(ids);
+    }
+
+    /**
+     * Loads at least the history entries of the given ids. When the history is
+     * much larger than the list of ids, only those ids are looked up; otherwise,
+     * or when the local cache is enabled, the whole history is loaded.
+     */
+    public Map<String, ExecutedChangeSet> getExecutedChangeSetsFor(Collection<String> ids) throws Exception {
+        if (cache == null && options.getTargetedLookupRatio() > 0) {
+            long historySize = store.estimateSize();
+            if (ids.size() <= historySize * options.getTargetedLookupRatio()) {
+                log.debug("Looking up {} changesets in a history of about {}", ids.size(), historySize);
+                return new HashMap<>(store.lookup(ids));
+            }
+        }
+        return getExecutedChangeSets();
     }
 
     public void markChangeSetExecuted(String id, String author, String description) throws Exception {
@@ -69,29 +122,33 @@ public class MigrationStateService {
     }
 
     public void markChangeSetExecuted(String id, String author, String description, String checksum) throws Exception {
-        ensureHistoryPathExists();
-        String nodePath = historyPath + "/" + encodeId(id);
-        ExecutedChangeSet executed = new ExecutedChangeSet(id, author, System.currentTimeMillis(), checksum);
-        byte[] data = mapper.writeValueAsBytes(executed);
-
-        try {
-            client.create().withMode(CreateMode.PERSISTENT).forPath(nodePath, data);
-        } catch (KeeperException.NodeExistsException e) {
-            client.setData().forPath(nodePath, data);
-        }
+        store.put(new ExecutedChangeSet(id, author, System.currentTimeMillis(), checksum));
+    }
+
+    /**
+     * Prepares the history write for a changeset without running it, so it can be
+     * committed in the same transaction as the changeset's changes.
+     */
+    public HistoryMarker prepareMarker(String id, String author, String description, String checksum) throws Exception {
+        return store.prepare(new ExecutedChangeSet(id, author, System.currentTimeMillis(), checksum));
     }
 
     public void removeChangeSetExecution(String id) throws Exception {
-        String nodePath = historyPath + "/" + encodeId(id);
-        try {
-            client.delete().forPath(nodePath);
-        } catch (KeeperException.NoNodeException e) {
-            // Ignored
-        }
+        store.remove(id);
     }
 
-    private String encodeId(String id) {
-        return java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    /**
+     * Converts a flat history to the given layout. Safe to run on a live history:
+     * readers using the target layout see the same records before, during and
+     * after the conversion. Returns the number of records in the history.
+     */
+    public int convertTo(HistoryLayout layout) throws Exception {
+        return switch (layout) {
+            case FLAT -> throw new IllegalArgumentException("Cannot convert a history to the " + HistoryLayout.FLAT + " layout");
+            case SNAPSHOT -> new SnapshotHistoryStore(client, historyPath, codec, reader, options.getSnapshotCompactionInterval())
+                    .absorbFlatEntries();
+            case SHARDED -> new ShardedHistoryStore(client, historyPath, codec, reader).absorbFlatEntries();
+        };
     }
 
     public static class ExecutedChangeSet {
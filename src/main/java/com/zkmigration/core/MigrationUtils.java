@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MigrationUtils {
     public static byte[] resolveData(String data, String file) throws IOException {
@@ -15,4 +17,24 @@ public class MigrationUtils {
         }
         return data != null ? data.getBytes(StandardCharsets.UTF_8) : new byte[0];
     }
+
+    /**
+     * Returns the proper ancestors of a znode path, shallowest first: "/a/b/c" gives "/a", "/a/b".
+     */
+    public static List<String> ancestors(String path) {
+        List<String> ancestors = new ArrayList<>();
+        int index = path.indexOf('/', 1);
+        while (index > 0) {
+            ancestors.add(path.substring(0, index));
+            index = path.indexOf('/', index + 1);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Maps an optional expected version to ZooKeeper's version argument, where -1 matches any version.
+     */
+    public static int versionOrAny(Integer expectedVersion) {
+        return expectedVersion != null ? expectedVersion : -1;
+    }
 }
@@ -0,0 +1,100 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Remembers which paths are known to exist during a run, so creates skip
+ * Curator's parent probing. A create is first tried on its own; only when its
+ * parent is missing are the ancestors below the deepest known one created
+ * directly, without existence checks. Paths the run removes are forgotten
+ * together with everything below them. An entry made stale by a change outside
+ * the run shows up as a NoNode, after which the cache is cleared and the create
+ * falls back to {@code creatingParentsIfNeeded()}.
+ */
+@Slf4j
+public class PathCache {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final CuratorFramework client;
+    private final NavigableSet<String> existing = new ConcurrentSkipListSet<>();
+
+    public PathCache(CuratorFramework client) {
+        this.client = client;
+    }
+
+    public void create(String path, byte[] data) throws Exception {
+        try {
+            client.create().withMode(CreateMode.PERSISTENT).forPath(path, data);
+        } catch (KeeperException.NoNodeException e) {
+            if (createParents(path)) {
+                client.create().withMode(CreateMode.PERSISTENT).forPath(path, data);
+            } else {
+                log.debug("Cached parents of {} are gone, clearing the path cache", path);
+                existing.clear();
+                client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(path, data);
+            }
+        }
+        created(path);
+    }
+
+    /**
+     * Records that the path and therefore all of its ancestors exist.
+     */
+    public void created(String path) {
+        existing.addAll(MigrationUtils.ancestors(path));
+        existing.add(path);
+    }
+
+    /**
+     * Forgets the path and everything below it.
+     */
+    public void removed(String path) {
+        existing.remove(path);
+        // '0' follows '/', so this range holds exactly the descendants
+        existing.subSet(path + "/", path + "0").clear();
+    }
+
+    public boolean contains(String path) {
+        return existing.contains(path);
+    }
+
+    public void clear() {
+        existing.clear();
+    }
+
+    /**
+     * Creates the ancestors below the deepest known one; returns false if a known ancestor turned out to be gone.
+     */
+    private boolean createParents(String path) throws Exception {
+        List<String> ancestors = MigrationUtils.ancestors(path);
+        int start = 0;
+        for (int i = ancestors.size() - 1; i >= 0; i--) {
+            if (existing.contains(ancestors.get(i))) {
+                start = i + 1;
+                break;
+            }
+        }
+        if (start == ancestors.size()) {
+            // The parent is known, yet the create failed
+            return false;
+        }
+        for (String ancestor : ancestors.subList(start, ancestors.size())) {
+            try {
+                client.create().withMode(CreateMode.PERSISTENT).forPath(ancestor, EMPTY);
+            } catch (KeeperException.NodeExistsException e) {
+                // Existed before the run
+            } catch (KeeperException.NoNodeException e) {
+                return false;
+            }
+            existing.add(ancestor);
+        }
+        return true;
+    }
+}
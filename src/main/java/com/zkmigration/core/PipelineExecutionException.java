@@ -0,0 +1,26 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A pipelined changeset stopped at {@link #getFailedChange()}. The changes
+ * listed in {@link #getCompletedChanges()} (indexes into the changeset's
+ * changes) were applied; no other change completed, although a failed create
+ * may have left the parents it created behind.
+ */
+@Getter
+public class PipelineExecutionException extends RuntimeException {
+    private final String changeSetId;
+    private final int failedChange;
+    private final List<Integer> completedChanges;
+
+    public PipelineExecutionException(String changeSetId, int failedChange, String description, List<Integer> completedChanges, Throwable cause) {
+        super(String.format("ChangeSet %s failed at change %d (%s): %s. Completed changes: %s",
+                changeSetId, failedChange, description, cause.getMessage(), completedChanges), cause);
+        this.changeSetId = changeSetId;
+        this.failedChange = failedChange;
+        this.completedChanges = completedChanges;
+    }
+}
@@ -0,0 +1,355 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeVisitor;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.DataChange;
+import com.zkmigration.model.Delete;
+import com.zkmigration.model.Import;
+import com.zkmigration.model.Rename;
+import com.zkmigration.model.Update;
+import com.zkmigration.model.Upsert;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Applies the changes of one changeset through Curator's background API with a
+ * bounded number of writes in flight. A change waits while an earlier change on
+ * the same path, one of its ancestors or one of its descendants is in flight,
+ * so dependent changes keep their changelog order. Renames, copies, imports and
+ * chunked values span several nodes and run alone once everything before them
+ * has completed. Given an executor,
+ * every change is applied with its blocking call on that executor instead of
+ * through callbacks (used with virtual threads). Given the prefetched data of
+ * unchanged writes, each candidate is compared as it is reached and skipped
+ * when its node already holds the payload.
+ */
+@Slf4j
+class PipelinedChangeExecutor {
+    private final CuratorFramework client;
+    private final int maxInFlight;
+    private final ExecutorService ioExecutor;
+    private final WriteThrottle throttle;
+
+    private final Object lock = new Object();
+    private final Set<String> inFlightPaths = new HashSet<>();
+    private final Map<String, Integer> inFlightAncestors = new HashMap<>();
+    private final TreeSet<Integer> completed = new TreeSet<>();
+    private final SortedMap<Integer, Exception> failures = new TreeMap<>();
+    private int inFlight;
+
+    PipelinedChangeExecutor(CuratorFramework client, int maxInFlight) {
+        this(client, maxInFlight, null);
+    }
+
+    PipelinedChangeExecutor(CuratorFramework client, int maxInFlight, ExecutorService ioExecutor) {
+        this(client, maxInFlight, ioExecutor, null);
+    }
+
+    PipelinedChangeExecutor(CuratorFramework client, int maxInFlight, ExecutorService ioExecutor, WriteThrottle throttle) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.ioExecutor = ioExecutor;
+        this.throttle = throttle;
+    }
+
+    void execute(String changeSetId, List<Change> changes) throws Exception {
+        execute(changeSetId, changes, new PreparedPayloads(changes), null);
+    }
+
+    void execute(String changeSetId, List<Change> changes, PreparedPayloads payloads, UnchangedWriteFilter.Prefetched unchanged) throws Exception {
+        Issuer issuer = new Issuer(payloads);
+        try {
+            for (int i = 0; i < changes.size(); i++) {
+                Change change = changes.get(i);
+                try {
+                    if (unchanged != null && unchanged.unchanged(change, payloads)) {
+                        synchronized (lock) {
+                            completed.add(i);
+                        }
+                        continue;
+                    }
+                } catch (IOException e) {
+                    recordFailure(i, e);
+                    break;
+                }
+                AsyncChange async = change.accept(issuer);
+
+                if (async != null && ioExecutor != null) {
+                    async = blocking(change, payloads);
+                }
+                if (throttle != null) {
+                    throttle.acquire(1, WriteThrottle.estimateBytes(change));
+                }
+
+                if (async == null) {
+                    if (!awaitIdle()) {
+                        break;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        applyBlocking(change, payloads);
+                        if (throttle != null) {
+                            throttle.recordLatency(System.nanoTime() - start, 1);
+                        }
+                        synchronized (lock) {
+                            completed.add(i);
+                        }
+                    } catch (Exception e) {
+                        recordFailure(i, e);
+                        break;
+                    }
+                    continue;
+                }
+
+                String path = change.getPath();
+                synchronized (lock) {
+                    while (failures.isEmpty() && (inFlight >= maxInFlight || conflicts(path))) {
+                        lock.wait();
+                    }
+                    if (!failures.isEmpty()) {
+                        break;
+                    }
+                    acquire(path);
+                }
+                int index = i;
+                long start = System.nanoTime();
+                try {
+                    async.start(error -> {
+                        if (throttle != null) {
+                            throttle.recordLatency(System.nanoTime() - start, 1);
+                        }
+                        finish(index, path, error);
+                    });
+                } catch (Exception e) {
+                    finish(index, path, e);
+                }
+            }
+        } finally {
+            awaitIdle();
+        }
+
+        synchronized (lock) {
+            if (!failures.isEmpty()) {
+                int failed = failures.firstKey();
+                PipelineExecutionException exception = new PipelineExecutionException(
+                        changeSetId, failed, describe(changes.get(failed)), new ArrayList<>(completed), failures.get(failed));
+                failures.tailMap(failed + 1).values().forEach(exception::addSuppressed);
+                throw exception;
+            }
+        }
+        log.debug("ChangeSet {}: {} changes applied with up to {} writes in flight", changeSetId, completed.size(), maxInFlight);
+    }
+
+    private AsyncChange blocking(Change change, PreparedPayloads payloads) {
+        return completion -> ioExecutor.execute(() -> {
+            Exception error = null;
+            try {
+                applyBlocking(change, payloads);
+            } catch (Exception e) {
+                error = e;
+            }
+            completion.done(error);
+        });
+    }
+
+    private void applyBlocking(Change change, PreparedPayloads payloads) throws Exception {
+        if (change instanceof DataChange dataChange) {
+            dataChange.applyChange(client, new PathCache(client), payloads.take(dataChange));
+        } else {
+            change.applyChange(client);
+        }
+    }
+
+    private static String describe(Change change) {
+        return change.getClass().getSimpleName() + " " + change.getPath();
+    }
+
+    private boolean conflicts(String path) {
+        if (inFlightAncestors.containsKey(path) || inFlightPaths.contains(path)) {
+            return true;
+        }
+        for (String ancestor : MigrationUtils.ancestors(path)) {
+            if (inFlightPaths.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void acquire(String path) {
+        inFlight++;
+        inFlightPaths.add(path);
+        for (String ancestor : MigrationUtils.ancestors(path)) {
+            inFlightAncestors.merge(ancestor, 1, Integer::sum);
+        }
+    }
+
+    private void finish(int index, String path, Exception error) {
+        synchronized (lock) {
+            inFlight--;
+            inFlightPaths.remove(path);
+            for (String ancestor : MigrationUtils.ancestors(path)) {
+                inFlightAncestors.computeIfPresent(ancestor, (key, count) -> count > 1 ? count - 1 : null);
+            }
+            if (error == null) {
+                completed.add(index);
+            } else {
+                failures.put(index, error);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void recordFailure(int index, Exception error) {
+        synchronized (lock) {
+            failures.put(index, error);
+        }
+    }
+
+    /**
+     * Waits for every in-flight change; returns false if any of them failed.
+     */
+    private boolean awaitIdle() {
+        synchronized (lock) {
+            boolean interrupted = false;
+            while (inFlight > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    // The callbacks still arrive; finish draining before giving up
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return failures.isEmpty();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Completion {
+        void done(Exception error);
+    }
+
+    @FunctionalInterface
+    private interface AsyncChange {
+        void start(Completion completion) throws Exception;
+    }
+
+    private static BackgroundCallback callback(Completion completion) {
+        return (c, event) -> {
+            KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+            completion.done(code == KeeperException.Code.OK ? null : KeeperException.create(code, event.getPath()));
+        };
+    }
+
+    /**
+     * Returns the background calls for a change, or null for changes that must run synchronously.
+     */
+    private class Issuer implements ChangeVisitor<AsyncChange> {
+        private final PreparedPayloads payloads;
+
+        Issuer(PreparedPayloads payloads) {
+            this.payloads = payloads;
+        }
+
+        @Override
+        public AsyncChange visit(Create create) {
+            if (Boolean.TRUE.equals(create.getChunked())) {
+                return null;
+            }
+            return completion -> client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT)
+                    .inBackground(callback(completion)).forPath(create.getPath(), payloads.take(create));
+        }
+
+        @Override
+        public AsyncChange visit(Update update) {
+            if (Boolean.TRUE.equals(update.getChunked())) {
+                return null;
+            }
+            int version = MigrationUtils.versionOrAny(update.getExpectedVersion());
+            return completion -> client.setData().withVersion(version).inBackground(callback(completion))
+                    .forPath(update.getPath(), payloads.take(update));
+        }
+
+        @Override
+        public AsyncChange visit(Delete delete) {
+            if (Boolean.TRUE.equals(delete.getRecursive())) {
+                return null;
+            }
+            return completion -> client.delete().inBackground(callback(completion)).forPath(delete.getPath());
+        }
+
+        @Override
+        public AsyncChange visit(Rename rename) {
+            return null;
+        }
+
+        @Override
+        public AsyncChange visit(Copy copy) {
+            return null;
+        }
+
+        @Override
+        public AsyncChange visit(Import anImport) {
+            return null;
+        }
+
+        @Override
+        public AsyncChange visit(Upsert upsert) {
+            if (Boolean.TRUE.equals(upsert.getChunked())) {
+                return null;
+            }
+            String path = upsert.getPath();
+            int version = MigrationUtils.versionOrAny(upsert.getExpectedVersion());
+            // Try the update first; only a missing node costs a second round trip
+            return completion -> {
+                byte[] data = payloads.take(upsert);
+                client.setData().withVersion(version).inBackground((c, event) -> {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    if (code != KeeperException.Code.NONODE) {
+                        completion.done(code == KeeperException.Code.OK ? null : KeeperException.create(code, path));
+                        return;
+                    }
+                    try {
+                        client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).inBackground((c2, created) -> {
+                            if (KeeperException.Code.get(created.getResultCode()) != KeeperException.Code.NODEEXISTS) {
+                                callback(completion).processResult(c2, created);
+                                return;
+                            }
+                            // Created by someone else in between
+                            try {
+                                client.setData().withVersion(version).inBackground(callback(completion)).forPath(path, data);
+                            } catch (Exception e) {
+                                completion.done(e);
+                            }
+                        }).forPath(path, data);
+                    } catch (Exception e) {
+                        completion.done(e);
+                    }
+                }).forPath(path, data);
+            };
+        }
+    }
+}
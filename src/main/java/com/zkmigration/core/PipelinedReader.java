@@ -0,0 +1,199 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads many znodes through Curator's background API, keeping a bounded number of
+ * requests in flight instead of paying one blocking round trip per node. Given an
+ * executor, each read is a blocking call on that executor instead (used with
+ * virtual threads).
+ */
+@Slf4j
+public class PipelinedReader {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 512;
+
+    private final CuratorFramework client;
+    private final int maxInFlight;
+    private final ExecutorService ioExecutor;
+
+    public PipelinedReader(CuratorFramework client) {
+        this(client, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public PipelinedReader(CuratorFramework client, int maxInFlight) {
+        this(client, maxInFlight, null);
+    }
+
+    public PipelinedReader(CuratorFramework client, int maxInFlight, ExecutorService ioExecutor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Returns the data of every path that exists, keyed by path. Nodes deleted
+     * concurrently are left out; any other error aborts the read.
+     */
+    public Map<String, byte[]> readData(Collection<String> paths) throws Exception {
+        Map<String, byte[]> results = new ConcurrentHashMap<>();
+        pipeline(paths, (path, callback) -> client.getData().inBackground(callback).forPath(path),
+                (path, event) -> results.put(path, event.getData() != null ? event.getData() : new byte[0]),
+                path -> {
+                    byte[] data = client.getData().forPath(path);
+                    results.put(path, data != null ? data : new byte[0]);
+                });
+        log.debug("Read {} of {} nodes with up to {} requests in flight", results.size(), paths.size(), maxInFlight);
+        return results;
+    }
+
+    public record NodeData(byte[] data, Stat stat) {
+    }
+
+    /**
+     * Returns the data and Stat of every path that exists, keyed by path.
+     */
+    public Map<String, NodeData> readNodes(Collection<String> paths) throws Exception {
+        Map<String, NodeData> results = new ConcurrentHashMap<>();
+        pipeline(paths, (path, callback) -> client.getData().inBackground(callback).forPath(path),
+                (path, event) -> results.put(path, new NodeData(event.getData() != null ? event.getData() : new byte[0], event.getStat())),
+                path -> {
+                    Stat stat = new Stat();
+                    byte[] data = client.getData().storingStatIn(stat).forPath(path);
+                    results.put(path, new NodeData(data != null ? data : new byte[0], stat));
+                });
+        return results;
+    }
+
+    /**
+     * Returns the subset of paths that currently exist.
+     */
+    public Set<String> exists(Collection<String> paths) throws Exception {
+        Set<String> results = ConcurrentHashMap.newKeySet();
+        pipeline(paths, (path, callback) -> client.checkExists().inBackground(callback).forPath(path),
+                (path, event) -> results.add(path),
+                path -> {
+                    if (client.checkExists().forPath(path) != null) {
+                        results.add(path);
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Returns the Stat of every path that exists, keyed by path.
+     */
+    public Map<String, Stat> stats(Collection<String> paths) throws Exception {
+        Map<String, Stat> results = new ConcurrentHashMap<>();
+        pipeline(paths, (path, callback) -> client.checkExists().inBackground(callback).forPath(path),
+                (path, event) -> results.put(path, event.getStat()),
+                path -> {
+                    Stat stat = client.checkExists().forPath(path);
+                    if (stat != null) {
+                        results.put(path, stat);
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Returns the children of every path that exists, keyed by path.
+     */
+    public Map<String, List<String>> children(Collection<String> paths) throws Exception {
+        Map<String, List<String>> results = new ConcurrentHashMap<>();
+        pipeline(paths, (path, callback) -> client.getChildren().inBackground(callback).forPath(path),
+                (path, event) -> results.put(path, event.getChildren()),
+                path -> results.put(path, client.getChildren().forPath(path)));
+        return results;
+    }
+
+    private void pipeline(Collection<String> paths, Request request, BiConsumer<String, CuratorEvent> onSuccess,
+                          BlockingRequest blockingRequest) throws Exception {
+        Semaphore window = new Semaphore(maxInFlight);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        try {
+            for (String path : paths) {
+                if (failure.get() != null) {
+                    break;
+                }
+                window.acquire();
+                if (ioExecutor != null) {
+                    submit(path, blockingRequest, window, failure);
+                    continue;
+                }
+                try {
+                    request.issue(path, (c, event) -> {
+                        try {
+                            KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                            if (code == KeeperException.Code.OK) {
+                                onSuccess.accept(path, event);
+                            } else if (code != KeeperException.Code.NONODE) {
+                                failure.compareAndSet(null, KeeperException.create(code, path));
+                            }
+                        } finally {
+                            window.release();
+                        }
+                    });
+                } catch (Exception e) {
+                    window.release();
+                    throw e;
+                }
+            }
+        } finally {
+            // Drain: once every permit is back, no callback is outstanding
+            window.acquireUninterruptibly(maxInFlight);
+            window.release(maxInFlight);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void submit(String path, BlockingRequest blockingRequest, Semaphore window, AtomicReference<Exception> failure) {
+        try {
+            ioExecutor.execute(() -> {
+                try {
+                    blockingRequest.run(path);
+                } catch (KeeperException.NoNodeException e) {
+                    // Deleted concurrently, left out like in the callback path
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    window.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            window.release();
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void issue(String path, BackgroundCallback callback) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BlockingRequest {
+        void run(String path) throws Exception;
+    }
+}
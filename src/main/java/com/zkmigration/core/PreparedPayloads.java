@@ -0,0 +1,102 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.DataChange;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compresses the payloads of one execution of a list of changes up to
+ * {@value #LOOKAHEAD} changes ahead of the writes, so the CPU work overlaps with
+ * the writes before them without holding every payload at once. The state
+ * lives here rather than on the changes, which may be shared by executions
+ * running concurrently.
+ */
+class PreparedPayloads {
+    static final int LOOKAHEAD = 4;
+
+    private final Executor executor;
+    private final List<DataChange> compressed = new ArrayList<>();
+    private final Map<DataChange, Integer> positions = new IdentityHashMap<>();
+    private final Map<DataChange, CompletableFuture<byte[]>> prepared = new IdentityHashMap<>();
+    private final Map<DataChange, byte[]> kept = new IdentityHashMap<>();
+    private int next;
+
+    PreparedPayloads(List<Change> changes) {
+        this(changes, ForkJoinPool.commonPool());
+    }
+
+    PreparedPayloads(List<Change> changes, Executor executor) {
+        this.executor = executor;
+        for (Change change : changes) {
+            if (change instanceof DataChange dataChange && dataChange.compresses()) {
+                positions.put(dataChange, compressed.size());
+                compressed.add(dataChange);
+            }
+        }
+        fill();
+    }
+
+    /**
+     * Returns the payload of the change, waiting for it if it is being prepared, and
+     * starts preparing the next ones. Each change's payload is taken once.
+     */
+    byte[] take(DataChange change) throws IOException {
+        CompletableFuture<byte[]> future;
+        synchronized (this) {
+            byte[] payload = kept.remove(change);
+            if (payload != null) {
+                return payload;
+            }
+            future = prepared.remove(change);
+            Integer position = positions.get(change);
+            if (position != null) {
+                next = Math.max(next, position + 1);
+            }
+            fill();
+        }
+        if (future == null) {
+            return change.payload();
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Holds a payload taken ahead of its write, such as for a comparison, for the write to take.
+     */
+    synchronized void keep(DataChange change, byte[] payload) {
+        kept.put(change, payload);
+    }
+
+    private void fill() {
+        while (prepared.size() < LOOKAHEAD && next < compressed.size()) {
+            DataChange change = compressed.get(next++);
+            prepared.put(change, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return change.payload();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.zkmigration.core;
+
+public enum RestoreMode {
+    /** Keeps nodes missing from the snapshot and skips nodes whose data already matches. */
+    MERGE,
+    /** Deletes the target subtree first, then writes every node of the snapshot. */
+    OVERWRITE
+}
@@ -0,0 +1,224 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Per-changeset nodes, named as in the flat layout, spread over 256 hash-prefix
+ * shard directories so no single getChildren response holds the whole history:
+ * <pre>
+ * &lt;history&gt;/.shard-3f/&lt;Base64 id&gt;
+ * </pre>
+ * Shards are listed and read in parallel. Every write also sets the history
+ * node's data so its Stat stays a complete version for {@link HistoryCache}.
+ */
+@Slf4j
+class ShardedHistoryStore implements HistoryStore {
+    static final String SHARD_PREFIX = ".shard-";
+    static final int SHARD_COUNT = 256;
+
+    private final CuratorFramework client;
+    private final String historyPath;
+    private final HistoryCodec codec;
+    private final PipelinedReader reader;
+    private final FlatHistoryStore legacy;
+    private volatile boolean initialized;
+
+    ShardedHistoryStore(CuratorFramework client, String historyPath, HistoryCodec codec, PipelinedReader reader) {
+        this.client = client;
+        this.historyPath = historyPath;
+        this.codec = codec;
+        this.reader = reader;
+        this.legacy = new FlatHistoryStore(client, historyPath, codec, reader, false);
+    }
+
+    static String shardOf(String encodedId) {
+        CRC32 crc = new CRC32();
+        crc.update(encodedId.getBytes(StandardCharsets.UTF_8));
+        return String.format("%s%02x", SHARD_PREFIX, crc.getValue() % SHARD_COUNT);
+    }
+
+    private String leafPath(String id) {
+        String encoded = FlatHistoryStore.encodeId(id);
+        return historyPath + "/" + shardOf(encoded) + "/" + encoded;
+    }
+
+    private List<String> shardPaths() {
+        List<String> paths = new ArrayList<>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            paths.add(String.format("%s/%s%02x", historyPath, SHARD_PREFIX, i));
+        }
+        return paths;
+    }
+
+    @Override
+    public void ensureExists() throws Exception {
+        if (initialized) {
+            return;
+        }
+        legacy.ensureExists();
+        // A flat history may hold any number of entries, so check every shard rather than the child count
+        List<String> shards = shardPaths();
+        shards.removeAll(reader.exists(shards));
+        TransactionBatcher creates = new TransactionBatcher(client);
+        for (String shard : shards) {
+            creates.add(client.transactionOp().create().forPath(shard, new byte[0]), TransactionBatcher.estimateSize(shard, null));
+        }
+        try {
+            creates.flush();
+        } catch (KeeperException.NodeExistsException e) {
+            // Another runner initialised the shards concurrently
+            for (String shard : shards) {
+                try {
+                    client.create().forPath(shard, new byte[0]);
+                } catch (KeeperException.NodeExistsException ignored) {
+                    // Already there
+                }
+            }
+        }
+        initialized = true;
+    }
+
+    @Override
+    public Collection<String> loadIds() throws Exception {
+        ensureExists();
+        List<String> ids = new ArrayList<>(legacy.listEntries().values());
+        ids.addAll(listLeaves().values());
+        return ids;
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> loadAll() throws Exception {
+        ensureExists();
+        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = new HashMap<>(legacy.load(legacy.listEntries()));
+        executedMap.putAll(legacy.load(listLeaves()));
+        return executedMap;
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> lookup(Collection<String> ids) throws Exception {
+        ensureExists();
+        Map<String, String> idsByPath = new LinkedHashMap<>();
+        for (String id : ids) {
+            idsByPath.put(leafPath(id), id);
+        }
+        Map<String, MigrationStateService.ExecutedChangeSet> executedMap = new HashMap<>();
+        if (hasLegacyEntries()) {
+            executedMap.putAll(legacy.lookup(ids));
+        }
+        executedMap.putAll(legacy.load(idsByPath));
+        return executedMap;
+    }
+
+    /**
+     * Whether unconverted flat entries remain next to the shards.
+     */
+    private boolean hasLegacyEntries() throws Exception {
+        Stat history = client.checkExists().forPath(historyPath);
+        return history != null && history.getNumChildren() > SHARD_COUNT;
+    }
+
+    /**
+     * Extrapolates from the first shard; ids hash evenly across shards.
+     */
+    @Override
+    public long estimateSize() throws Exception {
+        Stat history = client.checkExists().forPath(historyPath);
+        Stat sample = client.checkExists().forPath(shardPaths().get(0));
+        if (history == null || sample == null) {
+            return 0;
+        }
+        long legacyEntries = Math.max(0, history.getNumChildren() - SHARD_COUNT);
+        return legacyEntries + (long) sample.getNumChildren() * SHARD_COUNT;
+    }
+
+    private Map<String, String> listLeaves() throws Exception {
+        Map<String, List<String>> shards = reader.children(shardPaths());
+        Map<String, String> idsByPath = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> shard : shards.entrySet()) {
+            for (String child : shard.getValue()) {
+                try {
+                    idsByPath.put(shard.getKey() + "/" + child, FlatHistoryStore.decodeId(child));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Found invalid node in history shard {}: {}", shard.getKey(), child);
+                }
+            }
+        }
+        return idsByPath;
+    }
+
+    @Override
+    public void put(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        HistoryMarker marker = prepare(executed);
+        try {
+            client.transaction().forOperations(marker.getOps());
+        } catch (KeeperException.NodeExistsException e) {
+            String nodePath = leafPath(executed.id);
+            client.transaction().forOperations(
+                    client.transactionOp().setData().forPath(nodePath, codec.encode(executed)),
+                    client.transactionOp().setData().forPath(historyPath, new byte[0]));
+        }
+    }
+
+    @Override
+    public HistoryMarker prepare(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        ensureExists();
+        String nodePath = leafPath(executed.id);
+        byte[] data = codec.encode(executed);
+        List<CuratorOp> ops = List.of(
+                client.transactionOp().create().forPath(nodePath, data),
+                client.transactionOp().setData().forPath(historyPath, new byte[0]));
+        return new HistoryMarker(executed.id, ops,
+                TransactionBatcher.estimateSize(nodePath, data) + TransactionBatcher.estimateSize(historyPath, null), null);
+    }
+
+    @Override
+    public void remove(String id) throws Exception {
+        legacy.remove(id);
+        try {
+            client.transaction().forOperations(
+                    client.transactionOp().delete().forPath(leafPath(id)),
+                    client.transactionOp().setData().forPath(historyPath, new byte[0]));
+        } catch (KeeperException.NoNodeException e) {
+            // Ignored
+        }
+    }
+
+    /**
+     * Moves flat-layout nodes into their shards. Returns the number of records
+     * the history holds afterwards.
+     */
+    int absorbFlatEntries() throws Exception {
+        ensureExists();
+        Map<String, String> legacyEntries = legacy.listEntries();
+        Map<String, MigrationStateService.ExecutedChangeSet> records = legacy.load(legacyEntries);
+        TransactionBatcher moves = new TransactionBatcher(client);
+        for (Map.Entry<String, String> entry : legacyEntries.entrySet()) {
+            MigrationStateService.ExecutedChangeSet executed = records.get(entry.getValue());
+            if (executed == null) {
+                continue;
+            }
+            String nodePath = leafPath(entry.getValue());
+            byte[] data = codec.encode(executed);
+            moves.addAll(List.of(
+                    client.transactionOp().create().forPath(nodePath, data),
+                    client.transactionOp().delete().forPath(entry.getKey())),
+                    TransactionBatcher.estimateSize(nodePath, data) + TransactionBatcher.estimateSize(entry.getKey(), null));
+        }
+        moves.flush();
+        log.info("Moved {} history records at {} into shards", records.size(), historyPath);
+        return listLeaves().size();
+    }
+}
@@ -0,0 +1,390 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * History kept as a gzip-compressed snapshot split into chunk znodes, plus small
+ * append segments holding the puts and removes made since the last compaction:
+ * <pre>
+ * &lt;history&gt;/.snapshot                  manifest (generation, chunk count, last folded segment)
+ * &lt;history&gt;/.snapshot/g&lt;gen&gt;-&lt;n&gt;       chunk n of the compressed record array
+ * &lt;history&gt;/.segments/s-&lt;seq&gt;           one put or remove
+ * </pre>
+ * Per-changeset nodes left over from the flat layout are read underneath the
+ * snapshot and folded into it by the next compaction, so converting a history
+ * is just a compaction.
+ */
+@Slf4j
+class SnapshotHistoryStore implements HistoryStore {
+    static final String SNAPSHOT_NODE = ".snapshot";
+    static final String SEGMENTS_NODE = ".segments";
+    static final int CHUNK_SIZE = 256 * 1024;
+    private static final String SEGMENT_PREFIX = "s-";
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private final CuratorFramework client;
+    private final String historyPath;
+    private final String snapshotPath;
+    private final String segmentsPath;
+    private final HistoryCodec codec;
+    private final PipelinedReader reader;
+    private final FlatHistoryStore legacy;
+    private final int compactionInterval;
+    private volatile boolean initialized;
+
+    SnapshotHistoryStore(CuratorFramework client, String historyPath, HistoryCodec codec, PipelinedReader reader, int compactionInterval) {
+        this.client = client;
+        this.historyPath = historyPath;
+        this.snapshotPath = historyPath + "/" + SNAPSHOT_NODE;
+        this.segmentsPath = historyPath + "/" + SEGMENTS_NODE;
+        this.codec = codec;
+        this.reader = reader;
+        this.legacy = new FlatHistoryStore(client, historyPath, codec, reader, false);
+        this.compactionInterval = compactionInterval;
+    }
+
+    @Override
+    public void ensureExists() throws Exception {
+        if (initialized) {
+            return;
+        }
+        legacy.ensureExists();
+        try {
+            client.create().withMode(CreateMode.PERSISTENT).forPath(snapshotPath, codec.encode(new Manifest()));
+        } catch (KeeperException.NodeExistsException e) {
+            // Already initialised
+        }
+        try {
+            client.create().withMode(CreateMode.PERSISTENT).forPath(segmentsPath);
+        } catch (KeeperException.NodeExistsException e) {
+            // Already initialised
+        }
+        initialized = true;
+    }
+
+    @Override
+    public Collection<String> loadIds() throws Exception {
+        return loadAll().keySet();
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> loadAll() throws Exception {
+        return read().records;
+    }
+
+    @Override
+    public Map<String, MigrationStateService.ExecutedChangeSet> lookup(Collection<String> ids) throws Exception {
+        Map<String, MigrationStateService.ExecutedChangeSet> all = read().records;
+        Map<String, MigrationStateService.ExecutedChangeSet> found = new HashMap<>();
+        for (String id : ids) {
+            if (all.containsKey(id)) {
+                found.put(id, all.get(id));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A lookup reads the whole snapshot anyway.
+     */
+    @Override
+    public long estimateSize() {
+        return 0;
+    }
+
+    /**
+     * Folds nodes left over from the flat layout into the snapshot. Returns the
+     * number of records the history holds afterwards.
+     */
+    int absorbFlatEntries() throws Exception {
+        return compact();
+    }
+
+    @Override
+    public void put(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        HistoryMarker marker = prepare(executed);
+        marker.committed(client.transaction().forOperations(marker.getOps()));
+    }
+
+    @Override
+    public void remove(String id) throws Exception {
+        // A leftover flat node would otherwise resurface underneath the snapshot
+        legacy.remove(id);
+        Segment segment = new Segment();
+        segment.op = Segment.REMOVE;
+        segment.id = id;
+        append(segment);
+    }
+
+    @Override
+    public HistoryMarker prepare(MigrationStateService.ExecutedChangeSet executed) throws Exception {
+        Segment segment = new Segment();
+        segment.op = Segment.PUT;
+        segment.id = executed.id;
+        segment.record = executed;
+        return prepare(segment);
+    }
+
+    private void append(Segment segment) throws Exception {
+        HistoryMarker marker = prepare(segment);
+        marker.committed(client.transaction().forOperations(marker.getOps()));
+    }
+
+    private HistoryMarker prepare(Segment segment) throws Exception {
+        ensureExists();
+        byte[] data = codec.encode(segment);
+        String segmentPrefix = segmentsPath + "/" + SEGMENT_PREFIX;
+        // Touching the history node keeps its Stat a complete version for HistoryCache
+        List<CuratorOp> ops = List.of(
+                client.transactionOp().create().withMode(CreateMode.PERSISTENT_SEQUENTIAL).forPath(segmentPrefix, data),
+                client.transactionOp().setData().forPath(historyPath, new byte[0]));
+        return new HistoryMarker(segment.id, ops, TransactionBatcher.estimateSize(segmentPrefix, data) + TransactionBatcher.estimateSize(historyPath, null),
+                results -> {
+                    for (CuratorTransactionResult result : results) {
+                        if (result.getResultPath() != null && result.getResultPath().startsWith(segmentPrefix)) {
+                            maybeCompact(result.getResultPath());
+                        }
+                    }
+                });
+    }
+
+    private void maybeCompact(String segmentPath) throws Exception {
+        long sequence = sequenceOf(segmentPath.substring(segmentPath.lastIndexOf('/') + 1));
+        if (compactionInterval > 0 && (sequence + 1) % compactionInterval == 0) {
+            compact();
+        }
+    }
+
+    /**
+     * Folds the current segments and any flat-layout nodes into a new snapshot
+     * generation, then deletes what was folded. Returns the number of records
+     * in the new snapshot. Synchronized because changesets scheduled in parallel
+     * share this store, and two compactions would delete each other's chunks.
+     */
+    synchronized int compact() throws Exception {
+        State state = read();
+        int generation = state.manifest.generation + 1;
+
+        // Chunks outside the current generation were left behind by an interrupted compaction
+        String currentPrefix = chunkPrefix(state.manifest.generation);
+        List<String> strays = new ArrayList<>();
+        for (String child : client.getChildren().forPath(snapshotPath)) {
+            if (!child.startsWith(currentPrefix)) {
+                strays.add(snapshotPath + "/" + child);
+            }
+        }
+        deleteAll(strays);
+
+        byte[] payload = gzip(codec.encode(state.records.values()));
+        int chunks = (payload.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        TransactionBatcher writes = new TransactionBatcher(client);
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = Arrays.copyOfRange(payload, i * CHUNK_SIZE, Math.min(payload.length, (i + 1) * CHUNK_SIZE));
+            String chunkPath = chunkPath(generation, i);
+            writes.add(client.transactionOp().create().forPath(chunkPath, chunk), TransactionBatcher.estimateSize(chunkPath, chunk));
+        }
+        writes.flush();
+
+        Manifest next = new Manifest();
+        next.generation = generation;
+        next.chunks = chunks;
+        next.lastSegment = state.lastSegment;
+        next.records = state.records.size();
+        try {
+            client.setData().withVersion(state.manifestVersion).forPath(snapshotPath, codec.encode(next));
+        } catch (KeeperException e) {
+            deleteAll(chunkPaths(generation, chunks));
+            throw e;
+        }
+
+        // Everything below is already covered by the new manifest; readers skip it
+        List<String> obsolete = new ArrayList<>(chunkPaths(state.manifest.generation, state.manifest.chunks));
+        obsolete.addAll(state.foldedSegments);
+        obsolete.addAll(state.foldedLegacyNodes);
+        deleteAll(obsolete);
+
+        log.info("Compacted history at {} into generation {} ({} records, {} chunks, {} bytes)",
+                historyPath, generation, next.records, chunks, payload.length);
+        return next.records;
+    }
+
+    private State read() throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return readOnce();
+            } catch (KeeperException.NoNodeException | KeeperException.BadVersionException e) {
+                // A concurrent compaction replaced the snapshot while we were reading it
+                if (attempt >= MAX_READ_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("History at {} changed while reading, retrying", historyPath);
+            }
+        }
+    }
+
+    private State readOnce() throws Exception {
+        ensureExists();
+        State state = new State();
+
+        Stat manifestStat = new Stat();
+        state.manifest = codec.decode(client.getData().storingStatIn(manifestStat).forPath(snapshotPath), Manifest.class);
+        state.manifestVersion = manifestStat.getVersion();
+        state.lastSegment = state.manifest.lastSegment;
+
+        Map<String, String> legacyEntries = legacy.listEntries();
+        if (!legacyEntries.isEmpty()) {
+            state.records.putAll(legacy.load(legacyEntries));
+            state.foldedLegacyNodes.addAll(legacyEntries.keySet());
+        }
+
+        List<String> chunkPaths = chunkPaths(state.manifest.generation, state.manifest.chunks);
+        if (!chunkPaths.isEmpty()) {
+            Map<String, byte[]> chunkData = reader.readData(chunkPaths);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            for (String chunkPath : chunkPaths) {
+                byte[] chunk = chunkData.get(chunkPath);
+                if (chunk == null) {
+                    throw new KeeperException.NoNodeException(chunkPath);
+                }
+                payload.write(chunk);
+            }
+            MigrationStateService.ExecutedChangeSet[] snapshot =
+                    codec.decode(gunzip(payload.toByteArray()), MigrationStateService.ExecutedChangeSet[].class);
+            for (MigrationStateService.ExecutedChangeSet executed : snapshot) {
+                state.records.put(executed.id, executed);
+            }
+        }
+
+        List<String> segmentPaths = new ArrayList<>();
+        List<String> segmentNames = new ArrayList<>(client.getChildren().forPath(segmentsPath));
+        segmentNames.sort(null);
+        for (String name : segmentNames) {
+            if (sequenceOf(name) > state.manifest.lastSegment) {
+                segmentPaths.add(segmentsPath + "/" + name);
+                state.lastSegment = Math.max(state.lastSegment, sequenceOf(name));
+            } else {
+                // Folded by a compaction whose cleanup did not finish
+                state.foldedSegments.add(segmentsPath + "/" + name);
+            }
+        }
+        Map<String, byte[]> segmentData = reader.readData(segmentPaths);
+        for (String segmentPath : segmentPaths) {
+            byte[] data = segmentData.get(segmentPath);
+            if (data == null) {
+                throw new KeeperException.NoNodeException(segmentPath);
+            }
+            Segment segment = codec.decode(data, Segment.class);
+            if (Segment.REMOVE.equals(segment.op)) {
+                state.records.remove(segment.id);
+            } else {
+                state.records.put(segment.id, segment.record);
+            }
+            state.foldedSegments.add(segmentPath);
+        }
+
+        Stat current = client.checkExists().forPath(snapshotPath);
+        if (current == null || current.getVersion() != state.manifestVersion) {
+            throw new KeeperException.BadVersionException(snapshotPath);
+        }
+        return state;
+    }
+
+    private void deleteAll(List<String> paths) throws Exception {
+        try {
+            TransactionBatcher deletes = new TransactionBatcher(client);
+            for (String path : paths) {
+                deletes.add(client.transactionOp().delete().forPath(path), TransactionBatcher.estimateSize(path, null));
+            }
+            deletes.flush();
+        } catch (KeeperException.NoNodeException e) {
+            // Someone else cleaned up part of the list; fall back to one delete per node
+            for (String path : paths) {
+                try {
+                    client.delete().forPath(path);
+                } catch (KeeperException.NoNodeException ignored) {
+                    // Already gone
+                }
+            }
+        }
+    }
+
+    private List<String> chunkPaths(int generation, int chunks) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            paths.add(chunkPath(generation, i));
+        }
+        return paths;
+    }
+
+    private String chunkPath(int generation, int index) {
+        return String.format("%s/%s%05d", snapshotPath, chunkPrefix(generation), index);
+    }
+
+    private static String chunkPrefix(int generation) {
+        return String.format("g%010d-", generation);
+    }
+
+    private static long sequenceOf(String segmentName) {
+        return Long.parseLong(segmentName.substring(SEGMENT_PREFIX.length()));
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    private static class State {
+        Manifest manifest;
+        int manifestVersion;
+        long lastSegment;
+        final Map<String, MigrationStateService.ExecutedChangeSet> records = new LinkedHashMap<>();
+        final List<String> foldedSegments = new ArrayList<>();
+        final List<String> foldedLegacyNodes = new ArrayList<>();
+    }
+
+    public static class Manifest {
+        public int generation;
+        public int chunks;
+        public long lastSegment = -1;
+        public int records;
+    }
+
+    public static class Segment {
+        static final String PUT = "put";
+        static final String REMOVE = "remove";
+
+        public String op;
+        public String id;
+        public MigrationStateService.ExecutedChangeSet record;
+    }
+}
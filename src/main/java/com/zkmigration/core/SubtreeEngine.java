@@ -0,0 +1,192 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies, moves and deletes whole subtrees. The source is read level by level
+ * with pipelined reads, the destination is written parents first in size-bounded
+ * multi transactions, and a moved or deleted tree is removed leaves first the
+ * same way.
+ */
+@Slf4j
+public class SubtreeEngine {
+    private final CuratorFramework client;
+    private final PipelinedReader reader;
+    private final int maxTransactionBytes;
+
+    public SubtreeEngine(CuratorFramework client) {
+        this(client, PipelinedReader.DEFAULT_MAX_IN_FLIGHT, TransactionBatcher.DEFAULT_MAX_BYTES);
+    }
+
+    public SubtreeEngine(CuratorFramework client, int maxInFlightReads, int maxTransactionBytes) {
+        this.client = client;
+        this.reader = new PipelinedReader(client, maxInFlightReads);
+        this.maxTransactionBytes = maxTransactionBytes;
+    }
+
+    public record Stats(int nodes, long bytes, long readMillis, long writeMillis, long deleteMillis) {
+        public long totalMillis() {
+            return readMillis + writeMillis + deleteMillis;
+        }
+
+        public long nodesPerSecond() {
+            return totalMillis() == 0 ? nodes * 1000L : nodes * 1000L / totalMillis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d bytes in %d ms (read %d ms, write %d ms, delete %d ms, %d nodes/s)",
+                    nodes, bytes, totalMillis(), readMillis, writeMillis, deleteMillis, nodesPerSecond());
+        }
+    }
+
+    /** data is null when the traversal only collected sizes. */
+    private record Node(String path, byte[] data, int size) {
+    }
+
+    public Stats copy(String source, String destination) throws Exception {
+        return transfer(source, destination, false);
+    }
+
+    public Stats move(String source, String destination) throws Exception {
+        return transfer(source, destination, true);
+    }
+
+    /**
+     * Deletes the node and everything below it.
+     */
+    public Stats deleteTree(String root) throws Exception {
+        long start = System.nanoTime();
+        List<Node> nodes = read(root, false);
+        long readMillis = millisSince(start);
+
+        start = System.nanoTime();
+        delete(nodes);
+        Stats stats = new Stats(nodes.size(), totalSize(nodes), readMillis, 0, millisSince(start));
+        log.info("Deleted tree {}: {}", root, stats);
+        return stats;
+    }
+
+    /**
+     * Counts the nodes and data bytes below and including the root without reading any data.
+     */
+    public Stats measure(String root) throws Exception {
+        long start = System.nanoTime();
+        List<Node> nodes = read(root, false);
+        return new Stats(nodes.size(), totalSize(nodes), millisSince(start), 0, 0);
+    }
+
+    private Stats transfer(String source, String destination, boolean deleteSource) throws Exception {
+        if (destination.equals(source) || destination.startsWith(source + "/")) {
+            throw new IllegalArgumentException("Cannot copy " + source + " into itself (" + destination + ")");
+        }
+
+        long start = System.nanoTime();
+        List<Node> nodes = read(source, true);
+        long bytes = totalSize(nodes);
+        long readMillis = millisSince(start);
+        log.info("Read {} nodes ({} bytes) under {} in {} ms", nodes.size(), bytes, source, readMillis);
+
+        start = System.nanoTime();
+        write(nodes, source, destination);
+        long writeMillis = millisSince(start);
+
+        long deleteMillis = 0;
+        if (deleteSource) {
+            start = System.nanoTime();
+            delete(nodes);
+            deleteMillis = millisSince(start);
+        }
+
+        Stats stats = new Stats(nodes.size(), bytes, readMillis, writeMillis, deleteMillis);
+        log.info("{} {} to {}: {}", deleteSource ? "Moved" : "Copied", source, destination, stats);
+        return stats;
+    }
+
+    /**
+     * Returns the subtree in breadth-first order, so every parent precedes its children.
+     */
+    private List<Node> read(String root, boolean withData) throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        List<String> level = List.of(root);
+        int depth = 0;
+        while (!level.isEmpty()) {
+            Map<String, byte[]> data = withData ? reader.readData(level) : null;
+            Map<String, Stat> stats = withData ? null : reader.stats(level);
+            Set<String> found = withData ? data.keySet() : stats.keySet();
+            if (depth == 0 && !found.contains(root)) {
+                throw KeeperException.create(KeeperException.Code.NONODE, root);
+            }
+            Map<String, List<String>> children = reader.children(level);
+
+            List<String> next = new ArrayList<>();
+            for (String path : level) {
+                // Nodes deleted while we read are left out
+                if (!found.contains(path)) {
+                    continue;
+                }
+                nodes.add(withData
+                        ? new Node(path, data.get(path), data.get(path).length)
+                        : new Node(path, null, stats.get(path).getDataLength()));
+                for (String child : children.getOrDefault(path, List.of())) {
+                    next.add(path + "/" + child);
+                }
+            }
+            log.debug("Read level {} under {}: {} nodes", depth, root, level.size());
+            level = next;
+            depth++;
+        }
+        return nodes;
+    }
+
+    private void write(List<Node> nodes, String source, String destination) throws Exception {
+        client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(destination, nodes.get(0).data());
+
+        TransactionBatcher batcher = new TransactionBatcher(client, maxTransactionBytes, TransactionBatcher.DEFAULT_MAX_OPS);
+        int transactions = 0;
+        for (Node node : nodes.subList(1, nodes.size())) {
+            String target = destination + node.path().substring(source.length());
+            batcher.add(client.transactionOp().create().forPath(target, node.data()), TransactionBatcher.estimateSize(target, node.data()));
+            if (batcher.getTransactions() != transactions) {
+                transactions = batcher.getTransactions();
+                log.info("Written {}/{} nodes to {}", batcher.getOperations() + 1, nodes.size(), destination);
+            }
+        }
+        batcher.flush();
+    }
+
+    private void delete(List<Node> nodes) throws Exception {
+        TransactionBatcher batcher = new TransactionBatcher(client, maxTransactionBytes, TransactionBatcher.DEFAULT_MAX_OPS);
+        int transactions = 0;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            String path = nodes.get(i).path();
+            batcher.add(client.transactionOp().delete().forPath(path), TransactionBatcher.estimateSize(path, null));
+            if (batcher.getTransactions() != transactions) {
+                transactions = batcher.getTransactions();
+                log.info("Deleted {}/{} nodes", batcher.getOperations(), nodes.size());
+            }
+        }
+        batcher.flush();
+    }
+
+    private static long totalSize(List<Node> nodes) {
+        long bytes = 0;
+        for (Node node : nodes) {
+            bytes += node.size();
+        }
+        return bytes;
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,94 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeLogEntry;
+import com.zkmigration.model.ChangeSet;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migrates many tenants of one ensemble through a single client session, with
+ * up to {@code concurrency} tenants at once. Each tenant has its own history
+ * root and lock, from the root template with {@value TenantTemplate#PLACEHOLDER}
+ * replaced by the tenant id; the placeholder is also replaced in change paths.
+ * The changelog is parsed once by the caller and checksummed once here: a
+ * changeset's checksum is that of its template, so it is the same for every
+ * tenant.
+ */
+public class TenantFanOut {
+    private final CuratorFramework client;
+    private final String rootTemplate;
+    private final MigrationOptions options;
+    private final int concurrency;
+    private final FanOutPolicy policy;
+
+    public TenantFanOut(CuratorFramework client, String rootTemplate, MigrationOptions options, int concurrency, FanOutPolicy policy) {
+        if (!rootTemplate.contains(TenantTemplate.PLACEHOLDER)) {
+            throw new IllegalArgumentException("The history root " + rootTemplate + " must contain " + TenantTemplate.PLACEHOLDER);
+        }
+        this.client = client;
+        this.rootTemplate = rootTemplate;
+        this.options = options;
+        this.concurrency = concurrency;
+        this.policy = policy;
+    }
+
+    @FunctionalInterface
+    public interface TenantTask {
+        void run(MigrationService service, ChangeLog changeLog) throws Exception;
+    }
+
+    /**
+     * Runs the task for every tenant with the tenant's changelog and returns one result per tenant, in the given order.
+     */
+    public List<FanOut.Result> run(List<String> tenants, ChangeLog changeLog, TenantTask task) throws InterruptedException {
+        validate(tenants);
+        List<String> checksums = new ArrayList<>();
+        if (changeLog.getZookeeperChangeLog() != null) {
+            for (ChangeLogEntry entry : changeLog.getZookeeperChangeLog()) {
+                checksums.add(entry instanceof ChangeSet cs ? ChecksumUtil.calculateChecksum(cs) : null);
+            }
+        }
+        return new FanOut("tenant", concurrency, policy).run(tenants, (tenant, attach) -> {
+            ChangeLog tenantLog = TenantTemplate.forTenant(changeLog, tenant);
+            MigrationService service = new MigrationService(client, TenantTemplate.apply(rootTemplate, tenant), options);
+            service.shareChecksums(checksumsOf(tenantLog, checksums));
+            attach.accept(service);
+            task.run(service, tenantLog);
+        });
+    }
+
+    private static void validate(List<String> tenants) {
+        if (tenants.isEmpty()) {
+            throw new IllegalArgumentException("At least one tenant is required");
+        }
+        for (String tenant : tenants) {
+            if (tenant.isBlank() || tenant.contains("/")) {
+                throw new IllegalArgumentException("Invalid tenant id: '" + tenant + "'");
+            }
+        }
+        if (new HashSet<>(tenants).size() != tenants.size()) {
+            throw new IllegalArgumentException("Duplicate tenant ids in " + tenants);
+        }
+    }
+
+    /**
+     * Maps the tenant's changesets to the checksums of their templates, which are at the same positions.
+     */
+    private static Map<ChangeSet, String> checksumsOf(ChangeLog tenantLog, List<String> templateChecksums) {
+        Map<ChangeSet, String> checksums = new HashMap<>();
+        if (tenantLog.getZookeeperChangeLog() != null) {
+            for (int i = 0; i < tenantLog.getZookeeperChangeLog().size(); i++) {
+                if (tenantLog.getZookeeperChangeLog().get(i) instanceof ChangeSet cs) {
+                    checksums.put(cs, templateChecksums.get(i));
+                }
+            }
+        }
+        return checksums;
+    }
+}
@@ -0,0 +1,106 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeLogEntry;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.DataChange;
+import com.zkmigration.model.Rename;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instantiates a changelog for one tenant by replacing {@value #PLACEHOLDER} in
+ * change paths and destinations. Changesets and changes without the placeholder
+ * are shared between tenants as they are; only the others are copied.
+ */
+class TenantTemplate {
+    static final String PLACEHOLDER = "{tenant}";
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static String apply(String template, String tenant) {
+        return template != null ? template.replace(PLACEHOLDER, tenant) : null;
+    }
+
+    /**
+     * Returns the changelog for the tenant; its entries are in the same order as the template's.
+     */
+    static ChangeLog forTenant(ChangeLog template, String tenant) {
+        ChangeLog changeLog = new ChangeLog();
+        changeLog.setEnvironmentsGroups(template.getEnvironmentsGroups());
+        changeLog.setEnvironments(template.getEnvironments());
+        changeLog.setLabels(template.getLabels());
+        changeLog.setCompress(template.getCompress());
+        if (template.getZookeeperChangeLog() != null) {
+            List<ChangeLogEntry> entries = new ArrayList<>(template.getZookeeperChangeLog().size());
+            for (ChangeLogEntry entry : template.getZookeeperChangeLog()) {
+                entries.add(entry instanceof ChangeSet cs ? forTenant(cs, tenant) : entry);
+            }
+            changeLog.setZookeeperChangeLog(entries);
+        }
+        return changeLog;
+    }
+
+    static ChangeSet forTenant(ChangeSet template, String tenant) {
+        if (!templated(template.getChanges()) && !templated(template.getRollback())) {
+            return template;
+        }
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId(template.getId());
+        changeSet.setAuthor(template.getAuthor());
+        changeSet.setEnvironments(template.getEnvironments());
+        changeSet.setLabels(template.getLabels());
+        changeSet.setValidCheckSum(template.getValidCheckSum());
+        changeSet.setChanges(forTenant(template.getChanges(), tenant));
+        changeSet.setRollback(forTenant(template.getRollback(), tenant));
+        return changeSet;
+    }
+
+    private static List<Change> forTenant(List<Change> templates, String tenant) {
+        if (templates == null) {
+            return null;
+        }
+        List<Change> changes = new ArrayList<>(templates.size());
+        for (Change template : templates) {
+            changes.add(templated(template) ? copy(template, tenant) : template);
+        }
+        return changes;
+    }
+
+    private static Change copy(Change template, String tenant) {
+        Change change = mapper.convertValue(template, Change.class);
+        change.setPath(apply(template.getPath(), tenant));
+        if (change instanceof Rename rename) {
+            rename.setDestination(apply(rename.getDestination(), tenant));
+        } else if (change instanceof Copy copy) {
+            copy.setDestination(apply(copy.getDestination(), tenant));
+        } else if (change instanceof DataChange dataChange) {
+            // Not serialized, so carried over by hand
+            dataChange.setDefaultCompress(((DataChange) template).getDefaultCompress());
+        }
+        return change;
+    }
+
+    private static boolean templated(List<Change> changes) {
+        if (changes != null) {
+            for (Change change : changes) {
+                if (templated(change)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean templated(Change change) {
+        if (change.getPath() != null && change.getPath().contains(PLACEHOLDER)) {
+            return true;
+        }
+        String destination = change instanceof Rename rename ? rename.getDestination()
+                : change instanceof Copy copy ? copy.getDestination() : null;
+        return destination != null && destination.contains(PLACEHOLDER);
+    }
+}
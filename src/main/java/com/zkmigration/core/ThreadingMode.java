@@ -0,0 +1,11 @@
+package com.zkmigration.core;
+
+public enum ThreadingMode {
+    /** Curator background callbacks for I/O and a fork-join pool for parallel changesets. */
+    PLATFORM,
+    /**
+     * Blocking I/O on virtual threads (Java 21+). On older runtimes a bounded
+     * platform pool of {@link VirtualThreads#FALLBACK_POOL_SIZE} threads is used instead.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,98 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.CuratorTransactionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups operations into multi transactions that stay below the server's
+ * {@code jute.maxbuffer} limit.
+ */
+public class TransactionBatcher {
+    /** Half of the default 1 MB jute.maxbuffer, leaving room for the request envelope. */
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+    public static final int DEFAULT_MAX_OPS = 1000;
+    private static final int OP_OVERHEAD = 64;
+
+    private final CuratorFramework client;
+    private final int maxBytes;
+    private final int maxOps;
+    private final WriteThrottle throttle;
+    private final List<CuratorOp> pending = new ArrayList<>();
+    private int pendingBytes;
+    @Getter
+    private int transactions;
+    @Getter
+    private int operations;
+
+    public TransactionBatcher(CuratorFramework client) {
+        this(client, DEFAULT_MAX_BYTES, DEFAULT_MAX_OPS);
+    }
+
+    public TransactionBatcher(CuratorFramework client, int maxBytes, int maxOps) {
+        this(client, maxBytes, maxOps, null);
+    }
+
+    /**
+     * Commits through the throttle, which also bounds the operations per transaction while it is slowed down.
+     */
+    public TransactionBatcher(CuratorFramework client, int maxBytes, int maxOps, WriteThrottle throttle) {
+        this.client = client;
+        this.maxBytes = maxBytes;
+        this.maxOps = maxOps;
+        this.throttle = throttle;
+    }
+
+    public static int estimateSize(String path, byte[] data) {
+        return OP_OVERHEAD + path.length() + (data != null ? data.length : 0);
+    }
+
+    private int maxOps() {
+        return throttle != null ? throttle.batchSize(maxOps) : maxOps;
+    }
+
+    public void add(CuratorOp op, int estimatedBytes) throws Exception {
+        if (!pending.isEmpty() && (pendingBytes + estimatedBytes > maxBytes || pending.size() >= maxOps())) {
+            flush();
+        }
+        pending.add(op);
+        pendingBytes += estimatedBytes;
+    }
+
+    /**
+     * Adds operations that must land in the same transaction.
+     */
+    public void addAll(List<CuratorOp> ops, int estimatedBytes) throws Exception {
+        if (!pending.isEmpty() && (pendingBytes + estimatedBytes > maxBytes || pending.size() + ops.size() > maxOps())) {
+            flush();
+        }
+        pending.addAll(ops);
+        pendingBytes += estimatedBytes;
+    }
+
+    /**
+     * Commits the pending operations, returning the results of that transaction.
+     */
+    public List<CuratorTransactionResult> flush() throws Exception {
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+        if (throttle != null) {
+            throttle.acquire(pending.size(), pendingBytes);
+        }
+        long start = System.nanoTime();
+        List<CuratorTransactionResult> results = client.transaction().forOperations(new ArrayList<>(pending));
+        if (throttle != null) {
+            throttle.recordLatency(System.nanoTime() - start, pending.size());
+        }
+        transactions++;
+        operations += pending.size();
+        pending.clear();
+        pendingBytes = 0;
+        return results;
+    }
+}
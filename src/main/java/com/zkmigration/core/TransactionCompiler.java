@@ -0,0 +1,195 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeVisitor;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.DataChange;
+import com.zkmigration.model.Delete;
+import com.zkmigration.model.Import;
+import com.zkmigration.model.Rename;
+import com.zkmigration.model.Update;
+import com.zkmigration.model.Upsert;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.api.transaction.TransactionOp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the changes of a changeset into multi transaction operations. Which
+ * nodes exist is prefetched in one pipelined round and then tracked the way the
+ * compiled operations would change it, so parent creation and upserts are
+ * decided without further reads. Changes that cannot be expressed as plain
+ * operations are found up front by {@link #unsupportedReason(List)}.
+ */
+class TransactionCompiler implements ChangeVisitor<Void> {
+    private final CuratorFramework client;
+    private final Set<String> existing;
+    private final PreparedPayloads payloads;
+    private final List<CompiledOp> ops = new ArrayList<>();
+
+    record CompiledOp(CuratorOp op, int size) {
+    }
+
+    private TransactionCompiler(CuratorFramework client, Set<String> existing, PreparedPayloads payloads) {
+        this.client = client;
+        this.existing = existing;
+        this.payloads = payloads;
+    }
+
+    /**
+     * Returns why the changes cannot be compiled into a transaction, or null when they can.
+     */
+    static String unsupportedReason(List<Change> changes) {
+        for (Change change : changes) {
+            String reason = change.accept(UNSUPPORTED);
+            if (reason != null) {
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    static List<CompiledOp> compile(CuratorFramework client, PipelinedReader reader, List<Change> changes, PreparedPayloads payloads) throws Exception {
+        Set<String> candidates = new LinkedHashSet<>();
+        for (Change change : changes) {
+            candidates.addAll(MigrationUtils.ancestors(change.getPath()));
+            candidates.add(change.getPath());
+        }
+        String unsupported = unsupportedReason(changes);
+        if (unsupported != null) {
+            throw new IllegalArgumentException(unsupported);
+        }
+        TransactionCompiler compiler = new TransactionCompiler(client, new HashSet<>(reader.exists(candidates)), payloads);
+        for (Change change : changes) {
+            change.accept(compiler);
+        }
+        return compiler.ops;
+    }
+
+    @Override
+    public Void visit(Create create) {
+        byte[] data = resolve(create);
+        createWithParents(create.getPath(), data);
+        return null;
+    }
+
+    @Override
+    public Void visit(Update update) {
+        byte[] data = resolve(update);
+        int version = MigrationUtils.versionOrAny(update.getExpectedVersion());
+        add(op -> op.setData().withVersion(version).forPath(update.getPath(), data), update.getPath(), data);
+        return null;
+    }
+
+    @Override
+    public Void visit(Delete delete) {
+        add(op -> op.delete().forPath(delete.getPath()), delete.getPath(), null);
+        existing.remove(delete.getPath());
+        return null;
+    }
+
+    @Override
+    public Void visit(Rename rename) {
+        throw new IllegalStateException("rename cannot be compiled into a transaction");
+    }
+
+    @Override
+    public Void visit(Copy copy) {
+        throw new IllegalStateException("copy cannot be compiled into a transaction");
+    }
+
+    @Override
+    public Void visit(Import anImport) {
+        throw new IllegalStateException("import cannot be compiled into a transaction");
+    }
+
+    @Override
+    public Void visit(Upsert upsert) {
+        byte[] data = resolve(upsert);
+        if (existing.contains(upsert.getPath())) {
+            int version = MigrationUtils.versionOrAny(upsert.getExpectedVersion());
+            add(op -> op.setData().withVersion(version).forPath(upsert.getPath(), data), upsert.getPath(), data);
+        } else {
+            createWithParents(upsert.getPath(), data);
+        }
+        return null;
+    }
+
+    private void createWithParents(String path, byte[] data) {
+        for (String ancestor : MigrationUtils.ancestors(path)) {
+            if (existing.add(ancestor)) {
+                add(op -> op.create().forPath(ancestor, new byte[0]), ancestor, null);
+            }
+        }
+        add(op -> op.create().forPath(path, data), path, data);
+        existing.add(path);
+    }
+
+    private void add(OpFactory factory, String path, byte[] data) {
+        try {
+            ops.add(new CompiledOp(factory.build(client.transactionOp()), TransactionBatcher.estimateSize(path, data)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to build transaction operation for " + path, e);
+        }
+    }
+
+    private byte[] resolve(DataChange change) {
+        try {
+            return payloads.take(change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final ChangeVisitor<String> UNSUPPORTED = new ChangeVisitor<>() {
+        private static final String CHUNKED = "a chunked value cannot be compiled into a transaction";
+
+        @Override
+        public String visit(Create create) {
+            return Boolean.TRUE.equals(create.getChunked()) ? CHUNKED : null;
+        }
+
+        @Override
+        public String visit(Update update) {
+            return Boolean.TRUE.equals(update.getChunked()) ? CHUNKED : null;
+        }
+
+        @Override
+        public String visit(Delete delete) {
+            return Boolean.TRUE.equals(delete.getRecursive()) ? "a recursive delete cannot be compiled into a transaction" : null;
+        }
+
+        @Override
+        public String visit(Rename rename) {
+            return "rename cannot be compiled into a transaction";
+        }
+
+        @Override
+        public String visit(Copy copy) {
+            return "copy cannot be compiled into a transaction";
+        }
+
+        @Override
+        public String visit(Import anImport) {
+            return "import cannot be compiled into a transaction";
+        }
+
+        @Override
+        public String visit(Upsert upsert) {
+            return Boolean.TRUE.equals(upsert.getChunked()) ? CHUNKED : null;
+        }
+    };
+
+    @FunctionalInterface
+    private interface OpFactory {
+        CuratorOp build(TransactionOp op) throws Exception;
+    }
+}
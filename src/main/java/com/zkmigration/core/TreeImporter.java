@@ -0,0 +1,243 @@
+package com.zkmigration.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes a local directory tree or a YAML/JSON document below a znode. Directories
+ * and document objects become nodes with empty data, files and scalar values
+ * become nodes holding their content. Existing nodes are read in chunks and left
+ * alone when their data is already equal; the rest is created or updated in
+ * size-bounded multi transactions, parents first. Nothing is ever deleted, and the
+ * data of an existing root node is left as it is.
+ */
+@Slf4j
+public class TreeImporter {
+    private static final int CHUNK_SIZE = 1000;
+    private static final byte[] EMPTY = new byte[0];
+    private static final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final CuratorFramework client;
+    private final PipelinedReader reader;
+    private final int maxTransactionBytes;
+
+    public TreeImporter(CuratorFramework client) {
+        this(client, PipelinedReader.DEFAULT_MAX_IN_FLIGHT, TransactionBatcher.DEFAULT_MAX_BYTES);
+    }
+
+    public TreeImporter(CuratorFramework client, int maxInFlightReads, int maxTransactionBytes) {
+        this.client = client;
+        this.reader = new PipelinedReader(client, maxInFlightReads);
+        this.maxTransactionBytes = maxTransactionBytes;
+    }
+
+    /**
+     * A node to import. File content is only read when it is needed.
+     */
+    public record Entry(String path, Path file, byte[] data) {
+        public byte[] read() throws IOException {
+            return file != null ? Files.readAllBytes(file) : data;
+        }
+    }
+
+    public record Stats(int nodes, int created, int updated, int unchanged, long bytes, long millis) {
+        @Override
+        public String toString() {
+            return String.format("%d nodes (%d created, %d updated, %d unchanged), %d bytes written in %d ms",
+                    nodes, created, updated, unchanged, bytes, millis);
+        }
+    }
+
+    /**
+     * Expands the source into nodes below root, parents first; the root itself comes first.
+     */
+    public static List<Entry> expand(String root, String directory, String document) throws IOException {
+        if ((directory == null) == (document == null)) {
+            throw new IllegalArgumentException("An import needs exactly one of 'directory' and 'document'");
+        }
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry(root, null, EMPTY));
+        if (directory != null) {
+            Path base = Path.of(directory);
+            if (!Files.isDirectory(base)) {
+                throw new IOException("Not a directory: " + directory);
+            }
+            expandDirectory(base, root, entries);
+        } else {
+            Path file = Path.of(document);
+            ObjectMapper mapper = document.endsWith(".json") ? jsonMapper : yamlMapper;
+            JsonNode tree = mapper.readTree(file.toFile());
+            if (tree == null || !tree.isObject()) {
+                throw new IOException("The top level of " + document + " must be an object");
+            }
+            expandObject(tree, root, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * SHA-256 over every imported path and its content, in import order.
+     */
+    public static String contentHash(List<Entry> entries) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        for (Entry entry : entries) {
+            digest.update(entry.path().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (entry.file() != null) {
+                digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Files.size(entry.file())).array());
+                try (InputStream in = Files.newInputStream(entry.file())) {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            } else {
+                digest.update(ByteBuffer.allocate(Long.BYTES).putLong(entry.data().length).array());
+                digest.update(entry.data());
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    public Stats importTree(List<Entry> entries) throws Exception {
+        return run(entries, true);
+    }
+
+    /**
+     * Counts what {@link #importTree(List)} would do without writing anything.
+     */
+    public Stats plan(List<Entry> entries) throws Exception {
+        return run(entries, false);
+    }
+
+    private Stats run(List<Entry> entries, boolean write) throws Exception {
+        long start = System.nanoTime();
+        String root = entries.get(0).path();
+        int created = 0;
+        int updated = 0;
+        int unchanged = 0;
+        long bytes = 0;
+
+        boolean rootExists = client.checkExists().forPath(root) != null;
+        if (rootExists) {
+            unchanged++;
+        } else {
+            if (write) {
+                client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(root, EMPTY);
+            }
+            created++;
+        }
+
+        TransactionBatcher batcher = new TransactionBatcher(client, maxTransactionBytes, TransactionBatcher.DEFAULT_MAX_OPS);
+        List<Entry> rest = entries.subList(1, entries.size());
+        for (int from = 0; from < rest.size(); from += CHUNK_SIZE) {
+            List<Entry> chunk = rest.subList(from, Math.min(from + CHUNK_SIZE, rest.size()));
+            List<String> paths = new ArrayList<>(chunk.size());
+            for (Entry entry : chunk) {
+                paths.add(entry.path());
+            }
+            // Below a root that had to be created nothing exists yet
+            Map<String, byte[]> current = rootExists ? reader.readData(paths) : Map.of();
+
+            for (Entry entry : chunk) {
+                byte[] data = entry.read();
+                byte[] existing = current.get(entry.path());
+                if (existing != null && Arrays.equals(existing, data)) {
+                    unchanged++;
+                    continue;
+                }
+                if (existing == null) {
+                    created++;
+                    if (write) {
+                        batcher.add(client.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(entry.path(), data),
+                                TransactionBatcher.estimateSize(entry.path(), data));
+                    }
+                } else {
+                    updated++;
+                    if (write) {
+                        batcher.add(client.transactionOp().setData().forPath(entry.path(), data),
+                                TransactionBatcher.estimateSize(entry.path(), data));
+                    }
+                }
+                bytes += data.length;
+            }
+            log.debug("Imported {}/{} nodes below {}", from + chunk.size() + 1, entries.size(), root);
+        }
+        batcher.flush();
+
+        Stats stats = new Stats(entries.size(), created, updated, unchanged, bytes, (System.nanoTime() - start) / 1_000_000);
+        if (write) {
+            log.info("Imported into {}: {} in {} transaction(s)", root, stats, batcher.getTransactions());
+        }
+        return stats;
+    }
+
+    private static void expandDirectory(Path directory, String parent, List<Entry> entries) throws IOException {
+        List<Path> children;
+        try (Stream<Path> list = Files.list(directory)) {
+            children = list.sorted().toList();
+        }
+        for (Path child : children) {
+            String path = parent + "/" + child.getFileName();
+            if (Files.isDirectory(child)) {
+                entries.add(new Entry(path, null, EMPTY));
+                expandDirectory(child, path, entries);
+            } else {
+                entries.add(new Entry(path, child, null));
+            }
+        }
+    }
+
+    private static void expandObject(JsonNode object, String parent, List<Entry> entries) throws IOException {
+        Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getKey().isEmpty() || field.getKey().contains("/")) {
+                throw new IOException("Invalid node name '" + field.getKey() + "' below " + parent);
+            }
+            String path = parent + "/" + field.getKey();
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                entries.add(new Entry(path, null, EMPTY));
+                expandObject(value, path, entries);
+            } else if (value.isNull()) {
+                entries.add(new Entry(path, null, EMPTY));
+            } else if (value.isValueNode()) {
+                entries.add(new Entry(path, null, value.asText().getBytes(StandardCharsets.UTF_8)));
+            } else {
+                // Arrays are stored as JSON
+                entries.add(new Entry(path, null, jsonMapper.writeValueAsBytes(value)));
+            }
+        }
+    }
+}
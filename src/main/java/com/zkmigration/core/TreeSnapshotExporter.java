@@ -0,0 +1,94 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.KeeperException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a subtree into a snapshot file. Nodes are read in chunks with pipelined
+ * reads and written as soon as a chunk completes, so only one chunk of data and
+ * the paths still to visit are held in memory. Every node is written after its
+ * parent; a chunk mixes nodes of several subtrees and levels, so no other order
+ * is guaranteed.
+ */
+@Slf4j
+public class TreeSnapshotExporter {
+    static final int CHUNK_SIZE = 1000;
+
+    private final PipelinedReader reader;
+
+    public TreeSnapshotExporter(CuratorFramework client) {
+        this(client, new MigrationOptions());
+    }
+
+    public TreeSnapshotExporter(CuratorFramework client, MigrationOptions options) {
+        this.reader = new PipelinedReader(client, options.getMaxInFlightReads(), options.ioExecutor());
+    }
+
+    public record Stats(long nodes, long bytes, long fileBytes, long millis) {
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d bytes of data in a %d byte file in %d ms (%d nodes/s)",
+                    nodes, bytes, fileBytes, millis, millis == 0 ? nodes * 1000 : nodes * 1000 / millis);
+        }
+    }
+
+    public Stats export(String root, Path file, boolean compress) throws Exception {
+        long start = System.nanoTime();
+        TreeSnapshotWriter writer = new TreeSnapshotWriter(file, root, compress);
+        try (writer) {
+            traverse(root, writer);
+        } catch (Exception e) {
+            // Never leave a partial snapshot that looks complete
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        Stats stats = new Stats(writer.getNodes(), writer.getDataBytes(), Files.size(file), (System.nanoTime() - start) / 1_000_000);
+        log.info("Exported {} to {}: {}", root, file, stats);
+        return stats;
+    }
+
+    private void traverse(String root, TreeSnapshotWriter writer) throws Exception {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(root);
+        boolean first = true;
+        while (!pending.isEmpty()) {
+            List<String> chunk = new ArrayList<>(Math.min(CHUNK_SIZE, pending.size()));
+            while (!pending.isEmpty() && chunk.size() < CHUNK_SIZE) {
+                chunk.add(pending.pop());
+            }
+            Map<String, PipelinedReader.NodeData> data = reader.readNodes(chunk);
+            Map<String, List<String>> children = reader.children(chunk);
+            if (first && !data.containsKey(root)) {
+                throw KeeperException.create(KeeperException.Code.NONODE, root);
+            }
+            first = false;
+
+            List<String> next = new ArrayList<>();
+            for (String path : chunk) {
+                PipelinedReader.NodeData node = data.get(path);
+                // Nodes deleted while we read are left out, together with their children
+                if (node == null) {
+                    continue;
+                }
+                writer.write(path, node.data(), node.stat());
+                for (String child : children.getOrDefault(path, List.of())) {
+                    next.add(path.equals("/") ? "/" + child : path + "/" + child);
+                }
+            }
+            // Pushed in reverse so siblings are popped, and written, in order
+            for (int i = next.size() - 1; i >= 0; i--) {
+                pending.push(next.get(i));
+            }
+            log.debug("Exported {} nodes under {}, {} pending", writer.getNodes(), root, pending.size());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a snapshot written by {@link TreeSnapshotWriter} through memory-mapped
+ * windows of the file, so snapshots of any size are scanned without loading them
+ * into the heap. Records are returned in file order, parents before children.
+ */
+public class TreeSnapshotReader implements Closeable {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final Inflater inflater = new Inflater();
+    @Getter
+    private final String root;
+    @Getter
+    private final boolean compressed;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private boolean finished;
+
+    public record Node(String path, byte[] data, Stat stat) {
+    }
+
+    public TreeSnapshotReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            byte[] magic = new byte[TreeSnapshotWriter.MAGIC.length];
+            map(0, magic.length + 2 + Integer.BYTES).get(magic);
+            if (!Arrays.equals(magic, TreeSnapshotWriter.MAGIC)) {
+                throw new IOException(file + " is not a subtree snapshot");
+            }
+            byte version = window.get();
+            if (version != TreeSnapshotWriter.VERSION) {
+                throw new IOException("Unsupported snapshot format version " + version);
+            }
+            this.compressed = (window.get() & TreeSnapshotWriter.FLAG_COMPRESSED) != 0;
+            int rootLength = window.getInt();
+            this.position = magic.length + 2 + Integer.BYTES;
+            byte[] rootBytes = new byte[rootLength];
+            map(position, rootLength).get(rootBytes);
+            this.root = new String(rootBytes, StandardCharsets.UTF_8);
+            this.position += rootLength;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the next node, or null once every node has been read.
+     */
+    public Node next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int length = map(position, Integer.BYTES).getInt();
+        position += Integer.BYTES;
+        if (length == TreeSnapshotWriter.END_OF_RECORDS) {
+            finished = true;
+            return null;
+        }
+
+        MappedByteBuffer buffer = map(position, length);
+        position += length;
+        byte[] pathBytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(pathBytes);
+        Stat stat = new Stat(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+        boolean deflated = buffer.get() != 0;
+        byte[] stored = new byte[buffer.getInt()];
+        buffer.get(stored);
+        return new Node(new String(pathBytes, StandardCharsets.UTF_8), deflated ? inflate(stored, stat.getDataLength()) : stored, stat);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Positions the current window at the given offset, remapping when the range is not covered.
+     */
+    private MappedByteBuffer map(long offset, int length) throws IOException {
+        if (offset + length > size) {
+            throw new IOException("Snapshot is truncated at offset " + offset);
+        }
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long mapSize = Math.min(Math.max(WINDOW_SIZE, length), size - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapSize);
+            windowStart = offset;
+        }
+        window.position((int) (offset - windowStart));
+        return window;
+    }
+
+    private byte[] inflate(byte[] stored, int dataLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(stored);
+        byte[] data = new byte[dataLength];
+        try {
+            int length = 0;
+            while (length < dataLength && !inflater.finished()) {
+                int read = inflater.inflate(data, length, dataLength - length);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != dataLength) {
+                throw new IOException("Corrupt compressed data in snapshot");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed data in snapshot", e);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,216 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a subtree snapshot into the ensemble, optionally below another root.
+ * Snapshots list every node after its parent. The file is read once and cut
+ * into chunks, each holding records of one child subtree of the root; chunks
+ * of the same subtree are written in file order, even when records of other
+ * subtrees come between them, and chunks of different subtrees are written
+ * concurrently by up to {@code writers} threads, each chunk in size-bounded
+ * multi transactions, parents first. After a failure the remaining chunks are
+ * skipped.
+ */
+@Slf4j
+public class TreeSnapshotRestorer {
+    static final int CHUNK_SIZE = 1000;
+
+    private final CuratorFramework client;
+    private final MigrationOptions options;
+    private final PipelinedReader reader;
+
+    public TreeSnapshotRestorer(CuratorFramework client) {
+        this(client, new MigrationOptions());
+    }
+
+    public TreeSnapshotRestorer(CuratorFramework client, MigrationOptions options) {
+        this.client = client;
+        this.options = options;
+        this.reader = new PipelinedReader(client, options.getMaxInFlightReads(), options.ioExecutor());
+    }
+
+    public record Stats(long nodes, long created, long updated, long unchanged, long bytes, long millis) {
+        public long nodesPerSecond() {
+            return millis == 0 ? nodes * 1000 : nodes * 1000 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes (%d created, %d updated, %d unchanged), %d bytes written in %d ms (%d nodes/s)",
+                    nodes, created, updated, unchanged, bytes, millis, nodesPerSecond());
+        }
+    }
+
+    /**
+     * Restores the snapshot below target, or below the snapshot's own root when target is null.
+     */
+    public Stats restore(Path file, String target, RestoreMode mode, int writers) throws Exception {
+        if (writers < 1) {
+            throw new IllegalArgumentException("writers must be positive");
+        }
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        ExecutorService ioExecutor = options.ioExecutor();
+        // The platform fallback pool also serves the reads of each chunk, so writers get their own threads there
+        ExecutorService pool = ioExecutor != null && VirtualThreads.isAvailable() ? ioExecutor : Executors.newFixedThreadPool(writers);
+        try (TreeSnapshotReader snapshot = new TreeSnapshotReader(file)) {
+            String source = snapshot.getRoot();
+            String root = target != null ? target : source;
+            TreeSnapshotReader.Node first = snapshot.next();
+            if (first == null) {
+                throw new IllegalArgumentException(file + " holds no nodes");
+            }
+            restoreRoot(root, first.data(), mode, counters);
+            replay(snapshot, source, root, mode, writers, pool, counters);
+        } finally {
+            if (pool != ioExecutor) {
+                pool.shutdown();
+            }
+        }
+
+        Stats stats = new Stats(counters.nodes.sum(), counters.created.sum(), counters.updated.sum(), counters.unchanged.sum(),
+                counters.bytes.sum(), (System.nanoTime() - start) / 1_000_000);
+        log.info("Restored {} ({} mode, {} writers): {}", file, mode, writers, stats);
+        return stats;
+    }
+
+    private void restoreRoot(String root, byte[] data, RestoreMode mode, Counters counters) throws Exception {
+        counters.nodes.increment();
+        if (client.checkExists().forPath(root) != null) {
+            if (mode == RestoreMode.OVERWRITE) {
+                new SubtreeEngine(client, options.getMaxInFlightReads(), options.getMaxTransactionBytes()).deleteTree(root);
+            } else if (Arrays.equals(client.getData().forPath(root), data)) {
+                counters.unchanged.increment();
+                return;
+            } else {
+                client.setData().forPath(root, data);
+                counters.updated.increment();
+                counters.bytes.add(data.length);
+                return;
+            }
+        }
+        client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(root, data);
+        counters.created.increment();
+        counters.bytes.add(data.length);
+    }
+
+    private void replay(TreeSnapshotReader snapshot, String source, String root, RestoreMode mode, int writers,
+                        ExecutorService pool, Counters counters) throws Exception {
+        // Bounds both the chunks held in memory and the chunks being written at once
+        Semaphore window = new Semaphore(writers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // The last chunk submitted for each child subtree, which the next chunk of that subtree waits for
+        Map<String, CompletableFuture<Void>> subtrees = new HashMap<>();
+        String chunkSubtree = null;
+        List<TreeSnapshotReader.Node> chunk = new ArrayList<>();
+
+        TreeSnapshotReader.Node node;
+        while (failure.get() == null && (node = snapshot.next()) != null) {
+            String path = root + node.path().substring(source.length());
+            String subtree = subtreeOf(root, path);
+            if (!subtree.equals(chunkSubtree) || chunk.size() >= CHUNK_SIZE) {
+                if (!chunk.isEmpty()) {
+                    subtrees.put(chunkSubtree, submit(subtrees.get(chunkSubtree), chunk, mode, pool, window, failure, counters));
+                    chunk = new ArrayList<>();
+                }
+                chunkSubtree = subtree;
+            }
+            chunk.add(new TreeSnapshotReader.Node(path, node.data(), node.stat()));
+        }
+        if (!chunk.isEmpty() && failure.get() == null) {
+            subtrees.put(chunkSubtree, submit(subtrees.get(chunkSubtree), chunk, mode, pool, window, failure, counters));
+        }
+
+        for (CompletableFuture<Void> subtree : subtrees.values()) {
+            subtree.join();
+        }
+        if (failure.get() != null) {
+            Throwable error = failure.get();
+            throw error instanceof Exception exception ? exception : new RuntimeException(error);
+        }
+    }
+
+    private CompletableFuture<Void> submit(CompletableFuture<Void> previous, List<TreeSnapshotReader.Node> chunk, RestoreMode mode,
+                                           ExecutorService pool, Semaphore window, AtomicReference<Throwable> failure,
+                                           Counters counters) throws InterruptedException {
+        window.acquire();
+        Runnable task = () -> {
+            try {
+                if (failure.get() == null) {
+                    writeChunk(chunk, mode, counters);
+                }
+            } catch (Throwable e) {
+                // Recorded instead of thrown, so later chunks still run and release their permits
+                failure.compareAndSet(null, e);
+            } finally {
+                window.release();
+            }
+        };
+        // Chunks of one subtree run one after the other, in file order
+        return previous == null ? CompletableFuture.runAsync(task, pool) : previous.thenRunAsync(task, pool);
+    }
+
+    private void writeChunk(List<TreeSnapshotReader.Node> chunk, RestoreMode mode, Counters counters) throws Exception {
+        Map<String, byte[]> current = Map.of();
+        if (mode == RestoreMode.MERGE) {
+            List<String> paths = new ArrayList<>(chunk.size());
+            for (TreeSnapshotReader.Node node : chunk) {
+                paths.add(node.path());
+            }
+            current = reader.readData(paths);
+        }
+
+        TransactionBatcher batcher = new TransactionBatcher(client, options.getMaxTransactionBytes(), TransactionBatcher.DEFAULT_MAX_OPS);
+        for (TreeSnapshotReader.Node node : chunk) {
+            counters.nodes.increment();
+            byte[] existing = current.get(node.path());
+            if (existing == null) {
+                batcher.add(client.transactionOp().create().withMode(CreateMode.PERSISTENT).forPath(node.path(), node.data()),
+                        TransactionBatcher.estimateSize(node.path(), node.data()));
+                counters.created.increment();
+            } else if (Arrays.equals(existing, node.data())) {
+                counters.unchanged.increment();
+                continue;
+            } else {
+                batcher.add(client.transactionOp().setData().forPath(node.path(), node.data()),
+                        TransactionBatcher.estimateSize(node.path(), node.data()));
+                counters.updated.increment();
+            }
+            counters.bytes.add(node.data().length);
+        }
+        batcher.flush();
+    }
+
+    /**
+     * Returns the child of root that the path lies in.
+     */
+    private static String subtreeOf(String root, String path) {
+        int from = root.equals("/") ? 1 : root.length() + 1;
+        int end = path.indexOf('/', from);
+        return end < 0 ? path : path.substring(0, end);
+    }
+
+    private static class Counters {
+        final LongAdder nodes = new LongAdder();
+        final LongAdder created = new LongAdder();
+        final LongAdder updated = new LongAdder();
+        final LongAdder unchanged = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+}
@@ -0,0 +1,123 @@
+package com.zkmigration.core;
+
+import lombok.Getter;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Streams nodes into a subtree snapshot file.
+ * <p>
+ * Layout, big-endian: the magic {@code ZKSNAP}, a format version byte, a flags
+ * byte ({@link #FLAG_COMPRESSED}) and the root path as an int length plus UTF-8
+ * bytes. Then one record per node, parents before children: an int record
+ * length (excluding itself), the path as a short length plus UTF-8 bytes, the
+ * eleven Stat fields, a byte telling whether the data is deflated, and the
+ * stored data as an int length plus bytes. A record length of -1 ends the
+ * records and is followed by the long node count.
+ */
+public class TreeSnapshotWriter implements Closeable {
+    static final byte[] MAGIC = "ZKSNAP".getBytes(StandardCharsets.US_ASCII);
+    static final byte VERSION = 1;
+    public static final byte FLAG_COMPRESSED = 0x01;
+    static final int END_OF_RECORDS = -1;
+    /** Smaller values rarely shrink enough to pay for inflating them. */
+    private static final int MIN_COMPRESSED_SIZE = 64;
+
+    private final DataOutputStream out;
+    private final boolean compress;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private byte[] deflateBuffer = new byte[8192];
+    @Getter
+    private long nodes;
+    @Getter
+    private long dataBytes;
+
+    public TreeSnapshotWriter(Path file, String root, boolean compress) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        this.compress = compress;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(compress ? FLAG_COMPRESSED : 0);
+        byte[] rootBytes = root.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(rootBytes.length);
+        out.write(rootBytes);
+    }
+
+    public void write(String path, byte[] data, Stat stat) throws IOException {
+        record.reset();
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        recordOut.writeShort(pathBytes.length);
+        recordOut.write(pathBytes);
+        recordOut.writeLong(stat.getCzxid());
+        recordOut.writeLong(stat.getMzxid());
+        recordOut.writeLong(stat.getCtime());
+        recordOut.writeLong(stat.getMtime());
+        recordOut.writeInt(stat.getVersion());
+        recordOut.writeInt(stat.getCversion());
+        recordOut.writeInt(stat.getAversion());
+        recordOut.writeLong(stat.getEphemeralOwner());
+        recordOut.writeInt(stat.getDataLength());
+        recordOut.writeInt(stat.getNumChildren());
+        recordOut.writeLong(stat.getPzxid());
+
+        int deflated = compress && data.length >= MIN_COMPRESSED_SIZE ? deflate(data) : -1;
+        if (deflated >= 0 && deflated < data.length) {
+            recordOut.writeByte(1);
+            recordOut.writeInt(deflated);
+            recordOut.write(deflateBuffer, 0, deflated);
+        } else {
+            recordOut.writeByte(0);
+            recordOut.writeInt(data.length);
+            recordOut.write(data);
+        }
+
+        out.writeInt(record.size());
+        record.writeTo(out);
+        nodes++;
+        dataBytes += data.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeInt(END_OF_RECORDS);
+            out.writeLong(nodes);
+        } finally {
+            out.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private int deflate(byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflateBuffer.length) {
+                if (length >= data.length) {
+                    // Not worth it; store the data as it is
+                    return -1;
+                }
+                deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            }
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,146 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.DataChange;
+import com.zkmigration.model.Rename;
+import com.zkmigration.model.Update;
+import com.zkmigration.model.Upsert;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drops updates and upserts whose payload equals the node's current data, so a
+ * re-run does not bump versions or fire watches for nothing. The current data of
+ * all candidates is prefetched with one pipelined read; each payload is compared
+ * when its change is reached, so it is resolved no earlier than for the write. A
+ * change only qualifies when no earlier change of the same list touches its path
+ * or an ancestor, since the prefetched data would be stale by the time it runs,
+ * and when its expected version, if any, still matches, so a concurrent edit
+ * keeps failing the write.
+ */
+@Slf4j
+class UnchangedWriteFilter {
+    private final PipelinedReader reader;
+
+    UnchangedWriteFilter(PipelinedReader reader) {
+        this.reader = reader;
+    }
+
+    record Result(List<Change> changes, int skipped) {
+    }
+
+    /**
+     * The prefetched data of one list's candidates.
+     */
+    static final class Prefetched {
+        private final Map<Change, PipelinedReader.NodeData> current;
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private Prefetched(Map<Change, PipelinedReader.NodeData> current) {
+            this.current = current;
+        }
+
+        /**
+         * Whether the change can be skipped; a payload resolved for the comparison is kept for the write.
+         */
+        boolean unchanged(Change change, PreparedPayloads payloads) throws IOException {
+            PipelinedReader.NodeData node = current.get(change);
+            if (node == null) {
+                return false;
+            }
+            DataChange dataChange = (DataChange) change;
+            Integer expectedVersion = change instanceof Update update ? update.getExpectedVersion() : ((Upsert) change).getExpectedVersion();
+            if (expectedVersion != null && expectedVersion != node.stat().getVersion()) {
+                return false;
+            }
+            byte[] payload = payloads.take(dataChange);
+            if (Arrays.equals(payload, node.data())) {
+                log.debug("Skipping write to {}: data is already current", change.getPath());
+                skipped.incrementAndGet();
+                return true;
+            }
+            payloads.keep(dataChange, payload);
+            return false;
+        }
+
+        int skipped() {
+            return skipped.get();
+        }
+    }
+
+    Prefetched prefetch(List<Change> changes) throws Exception {
+        List<DataChange> candidates = candidates(changes);
+        Map<Change, PipelinedReader.NodeData> current = new IdentityHashMap<>();
+        if (!candidates.isEmpty()) {
+            List<String> paths = new ArrayList<>();
+            for (DataChange change : candidates) {
+                paths.add(change.getPath());
+            }
+            Map<String, PipelinedReader.NodeData> nodes = reader.readNodes(paths);
+            for (DataChange change : candidates) {
+                PipelinedReader.NodeData node = nodes.get(change.getPath());
+                if (node != null) {
+                    current.put(change, node);
+                }
+            }
+        }
+        return new Prefetched(current);
+    }
+
+    /**
+     * Drops the unchanged writes up front, for executors that need the whole list before writing.
+     */
+    Result filter(List<Change> changes, PreparedPayloads payloads) throws Exception {
+        Prefetched prefetched = prefetch(changes);
+        List<Change> remaining = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            if (!prefetched.unchanged(change, payloads)) {
+                remaining.add(change);
+            }
+        }
+        return new Result(remaining, prefetched.skipped());
+    }
+
+    private static List<DataChange> candidates(List<Change> changes) {
+        List<DataChange> candidates = new ArrayList<>();
+        Set<String> touched = new HashSet<>();
+        for (Change change : changes) {
+            if ((change instanceof Update || change instanceof Upsert) && change.getPath() != null
+                    && !Boolean.TRUE.equals(((DataChange) change).getChunked()) && !touches(touched, change.getPath())) {
+                candidates.add((DataChange) change);
+            }
+            if (change.getPath() != null) {
+                touched.add(change.getPath());
+            }
+            if (change instanceof Rename rename && rename.getDestination() != null) {
+                touched.add(rename.getDestination());
+            }
+            if (change instanceof Copy copy && copy.getDestination() != null) {
+                touched.add(copy.getDestination());
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean touches(Set<String> touched, String path) {
+        if (touched.contains(path) || touched.contains("/")) {
+            return true;
+        }
+        for (String ancestor : MigrationUtils.ancestors(path)) {
+            if (touched.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
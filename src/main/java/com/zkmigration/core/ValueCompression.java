@@ -0,0 +1,50 @@
+package com.zkmigration.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses node payloads with GZIP. Compressed values are recognised by the
+ * GZIP header, so readers of the tool decompress them transparently and other
+ * consumers can detect them the same way.
+ */
+public class ValueCompression {
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int DEFLATE_METHOD = 0x08;
+
+    public static byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length >= 10
+                && (data[0] & 0xff) == GZIP_MAGIC_1 && (data[1] & 0xff) == GZIP_MAGIC_2 && data[2] == DEFLATE_METHOD;
+    }
+
+    /**
+     * Returns the decompressed value, or the value itself when it is not compressed.
+     */
+    public static byte[] decode(byte[] data) {
+        if (!isCompressed(data)) {
+            return data;
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            // Looked like GZIP but is not; show it as stored
+            return data;
+        }
+    }
+}
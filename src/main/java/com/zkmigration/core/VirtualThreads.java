@@ -0,0 +1,69 @@
+package com.zkmigration.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for {@link ThreadingMode#VIRTUAL}. The build targets Java 17,
+ * so virtual threads are looked up reflectively and replaced by a bounded pool
+ * of daemon platform threads when the runtime does not have them.
+ */
+@Slf4j
+public final class VirtualThreads {
+    public static final int FALLBACK_POOL_SIZE = 64;
+
+    private static volatile ExecutorService executor;
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isAvailable() {
+        return virtualFactory() != null;
+    }
+
+    /**
+     * Returns the process-wide executor. It is never shut down; callers bound
+     * their own concurrency.
+     */
+    public static ExecutorService executor() {
+        if (executor == null) {
+            synchronized (VirtualThreads.class) {
+                if (executor == null) {
+                    executor = create();
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService create() {
+        Method factory = virtualFactory();
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Could not create a virtual thread executor, using platform threads", e);
+            }
+        } else {
+            log.warn("Virtual threads need Java 21; using a pool of {} platform threads", FALLBACK_POOL_SIZE);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(FALLBACK_POOL_SIZE, runnable -> {
+            Thread thread = new Thread(runnable, "zk-migration-io-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method virtualFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
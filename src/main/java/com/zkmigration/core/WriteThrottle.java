@@ -0,0 +1,215 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.DataChange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of writes in operations and bytes per second with token
+ * buckets that allow short bursts. In adaptive mode it also tracks the latency
+ * of writes per operation: when the moving average grows well above the
+ * fastest average seen, the ensemble is assumed to be under load and the rate
+ * and transaction batch size are cut; they grow back gradually once latency
+ * recovers. Without a configured operations limit, the throughput measured
+ * while the latency baseline is established serves as the limit to cut.
+ */
+@Slf4j
+public class WriteThrottle {
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WARMUP_SAMPLES = 10;
+    private static final double SMOOTHING = 0.2;
+    private static final double SLOW_FACTOR = 2.0;
+    private static final double RECOVERED_FACTOR = 1.5;
+    private static final double DECREASE = 0.7;
+    private static final double INCREASE = 0.05;
+    private static final double MIN_RATE = 0.05;
+
+    private final double maxOpsPerSecond;
+    private final double maxBytesPerSecond;
+    private final boolean adaptive;
+
+    private long nextFreeOps = Long.MIN_VALUE;
+    private long nextFreeBytes = Long.MIN_VALUE;
+    private double rate = 1.0;
+    private double averageLatency;
+    private double baselineLatency = Double.MAX_VALUE;
+    private long samples;
+    private long lastAdjust;
+    private long started;
+    private long warmupOperations;
+    private double measuredOpsPerSecond;
+
+    private long operations;
+    private long bytes;
+    private long waits;
+    private long throttledNanos;
+    private long slowdowns;
+    private double lowestRate = 1.0;
+
+    /**
+     * Limits of 0 or less leave that dimension unlimited.
+     */
+    public WriteThrottle(double maxOpsPerSecond, double maxBytesPerSecond, boolean adaptive) {
+        this.maxOpsPerSecond = maxOpsPerSecond;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.adaptive = adaptive;
+        this.lastAdjust = System.nanoTime() - ADJUST_INTERVAL_NANOS;
+    }
+
+    /**
+     * Returns the throttle configured by the options, or null when writes are not throttled.
+     */
+    static WriteThrottle of(MigrationOptions options) {
+        if (options.getMaxWriteOpsPerSecond() <= 0 && options.getMaxWriteBytesPerSecond() <= 0 && !options.isAdaptiveThrottling()) {
+            return null;
+        }
+        return new WriteThrottle(options.getMaxWriteOpsPerSecond(), options.getMaxWriteBytesPerSecond(), options.isAdaptiveThrottling());
+    }
+
+    public record Stats(long operations, long bytes, long waits, long throttledMillis, long slowdowns, double lowestRate) {
+        @Override
+        public String toString() {
+            return String.format("%d operations, %d bytes, %d waits totalling %d ms, %d slowdowns, lowest rate %.0f%%",
+                    operations, bytes, waits, throttledMillis, slowdowns, lowestRate * 100);
+        }
+    }
+
+    /**
+     * Blocks until the given number of operations and bytes may be written.
+     */
+    public void acquire(int ops, long size) throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            operations += ops;
+            bytes += size;
+            long now = System.nanoTime();
+            if (warmupOperations == 0) {
+                started = now;
+            }
+            warmupOperations += ops;
+            wait = Math.max(reserveOps(now, ops), reserveBytes(now, size));
+            if (wait > 0) {
+                waits++;
+                throttledNanos += wait;
+            }
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private long reserveOps(long now, int ops) {
+        double limit = opsLimit();
+        if (limit <= 0) {
+            return 0;
+        }
+        long base = Math.max(nextFreeOps, now - BURST_NANOS);
+        nextFreeOps = base + (long) (ops * 1e9 / (limit * rate));
+        return Math.max(0, base - now);
+    }
+
+    /**
+     * The configured limit, or the measured throughput while slowed down; 0 when unlimited.
+     */
+    private double opsLimit() {
+        if (maxOpsPerSecond > 0) {
+            return maxOpsPerSecond;
+        }
+        return rate < 1.0 ? measuredOpsPerSecond : 0;
+    }
+
+    private long reserveBytes(long now, long size) {
+        if (maxBytesPerSecond <= 0) {
+            return 0;
+        }
+        long base = Math.max(nextFreeBytes, now - BURST_NANOS);
+        nextFreeBytes = base + (long) (size * 1e9 / (maxBytesPerSecond * rate));
+        return Math.max(0, base - now);
+    }
+
+    /**
+     * Records how long a write of the given number of operations took.
+     */
+    public synchronized void recordLatency(long nanos, int ops) {
+        if (!adaptive || ops <= 0) {
+            return;
+        }
+        double perOp = (double) nanos / ops;
+        averageLatency = samples == 0 ? perOp : averageLatency + SMOOTHING * (perOp - averageLatency);
+        if (++samples < WARMUP_SAMPLES) {
+            return;
+        }
+        baselineLatency = Math.min(baselineLatency, averageLatency);
+        long now = System.nanoTime();
+        if (samples == WARMUP_SAMPLES && warmupOperations > 0 && now > started) {
+            measuredOpsPerSecond = warmupOperations * 1e9 / (now - started);
+        }
+        if (now - lastAdjust < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+        if (averageLatency > baselineLatency * SLOW_FACTOR && rate > MIN_RATE) {
+            rate = Math.max(MIN_RATE, rate * DECREASE);
+            lowestRate = Math.min(lowestRate, rate);
+            slowdowns++;
+            lastAdjust = now;
+            log.info("Write latency {} us/op against a baseline of {} us/op, throttling to {}% of {}",
+                    (long) (averageLatency / 1000), (long) (baselineLatency / 1000), Math.round(rate * 100),
+                    maxOpsPerSecond > 0 || maxBytesPerSecond > 0 ? "the configured rate" : String.format("%.0f ops/s", measuredOpsPerSecond));
+        } else if (averageLatency < baselineLatency * RECOVERED_FACTOR && rate < 1.0) {
+            rate = Math.min(1.0, rate + INCREASE);
+            lastAdjust = now;
+        }
+    }
+
+    /**
+     * Scales the operations per transaction by the current rate.
+     */
+    public synchronized int batchSize(int maxOps) {
+        return Math.max(1, (int) (maxOps * rate));
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(operations, bytes, waits, TimeUnit.NANOSECONDS.toMillis(throttledNanos), slowdowns, lowestRate);
+    }
+
+    /**
+     * Starts new statistics; the current rate and latency baseline are kept.
+     */
+    public synchronized void resetStats() {
+        operations = 0;
+        bytes = 0;
+        waits = 0;
+        throttledNanos = 0;
+        slowdowns = 0;
+        lowestRate = rate;
+    }
+
+    /**
+     * Estimates the bytes a change writes, without resolving or compressing its payload.
+     */
+    static long estimateBytes(Change change) {
+        long size = TransactionBatcher.estimateSize(change.getPath() != null ? change.getPath() : "", null);
+        if (change instanceof DataChange dataChange) {
+            if (dataChange.getData() != null) {
+                size += dataChange.getData().length();
+            } else if (dataChange.getFile() != null) {
+                try {
+                    size += Files.size(Path.of(dataChange.getFile()));
+                } catch (IOException e) {
+                    // The write reports the missing file
+                }
+            }
+        }
+        return size;
+    }
+}
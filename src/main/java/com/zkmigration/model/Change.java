@@ -2,6 +2,7 @@ package com.zkmigration.model;
 
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.zkmigration.core.PathCache;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.curator.framework.CuratorFramework;
@@ -14,7 +15,9 @@ import org.apache.curator.framework.CuratorFramework;
     @JsonSubTypes.Type(value = Update.class, name = "update"),
     @JsonSubTypes.Type(value = Delete.class, name = "delete"),
     @JsonSubTypes.Type(value = Rename.class, name = "rename"),
-    @JsonSubTypes.Type(value = Upsert.class, name = "upsert")
+    @JsonSubTypes.Type(value = Upsert.class, name = "upsert"),
+    @JsonSubTypes.Type(value = Copy.class, name = "copy"),
+    @JsonSubTypes.Type(value = Import.class, name = "import")
 })
 public abstract class Change {
     private String path;
@@ -22,4 +25,11 @@ public abstract class Change {
     public abstract <T> T accept(ChangeVisitor<T> visitor);
 
     public abstract void applyChange(CuratorFramework client) throws Exception;
+
+    /**
+     * Applies the change within a run, using and keeping up to date the run's cache of existing paths.
+     */
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client);
+    }
 }
@@ -18,6 +18,9 @@ public class ChangeLog {
     @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
     private List<String> labels;
 
+    /** Default for the compress option of the data changes in this file and the files it includes. */
+    private Boolean compress;
+
     private List<ChangeLogEntry> zookeeperChangeLog;
 
 }
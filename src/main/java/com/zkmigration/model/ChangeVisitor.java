@@ -6,4 +6,6 @@ public interface ChangeVisitor<T> {
     T visit(Delete delete);
     T visit(Rename rename);
     T visit(Upsert upsert);
+    T visit(Copy copy);
+    T visit(Import anImport);
 }
@@ -0,0 +1,32 @@
+package com.zkmigration.model;
+
+import com.zkmigration.core.PathCache;
+import com.zkmigration.core.SubtreeEngine;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+
+@Slf4j
+@Setter
+@Getter
+public class Copy extends Change {
+    private String destination;
+
+    @Override
+    public <T> T accept(ChangeVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client) throws Exception {
+        log.info("Copying node from {} to {}", getPath(), getDestination());
+        new SubtreeEngine(client).copy(getPath(), getDestination());
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client);
+        paths.created(getDestination());
+    }
+}
@@ -0,0 +1,58 @@
+package com.zkmigration.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.zkmigration.core.MigrationUtils;
+import com.zkmigration.core.PathCache;
+import com.zkmigration.core.ValueCompression;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.io.IOException;
+
+/**
+ * A change that writes a payload given inline as {@code data} or read from {@code file}.
+ */
+@Setter
+@Getter
+public abstract class DataChange extends Change {
+    private String data;
+    private String file;
+    /** Store the value as chunk children plus a manifest, for values above the znode size limit. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean chunked;
+    /** GZIP the payload before writing it; overrides the changelog's default. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean compress;
+    /** The changelog's compress default, set by the parser and left out of the checksum. */
+    @JsonIgnore
+    private Boolean defaultCompress;
+
+    public boolean compresses() {
+        return compress != null ? compress : Boolean.TRUE.equals(defaultCompress);
+    }
+
+    /**
+     * Returns the bytes to write: the resolved data, compressed if enabled.
+     */
+    public byte[] payload() throws IOException {
+        byte[] resolved = MigrationUtils.resolveData(getData(), getFile());
+        return compresses() ? ValueCompression.compress(resolved) : resolved;
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client) throws Exception {
+        applyChange(client, new PathCache(client));
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client, paths, payload());
+    }
+
+    /**
+     * Applies the change with a payload the caller already resolved, such as one prepared ahead of the write.
+     */
+    public abstract void applyChange(CuratorFramework client, PathCache paths, byte[] data) throws Exception;
+}
@@ -1,10 +1,21 @@
 package com.zkmigration.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.zkmigration.core.PathCache;
+import com.zkmigration.core.SubtreeEngine;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 
 @Slf4j
+@Setter
+@Getter
 public class Delete extends Change {
+    /** Delete the node's whole subtree; left out of the checksum when unset. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean recursive;
+
     @Override
     public <T> T accept(ChangeVisitor<T> visitor) {
         return visitor.visit(this);
@@ -12,7 +23,18 @@ public class Delete extends Change {
 
     @Override
     public void applyChange(CuratorFramework client) throws Exception {
+        if (Boolean.TRUE.equals(getRecursive())) {
+            log.info("Deleting tree: {}", getPath());
+            new SubtreeEngine(client).deleteTree(getPath());
+            return;
+        }
         log.info("Deleting node: {}", getPath());
         client.delete().forPath(getPath());
     }
+
+    @Override
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client);
+        paths.removed(getPath());
+    }
 }
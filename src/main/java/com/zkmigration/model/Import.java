@@ -0,0 +1,70 @@
+package com.zkmigration.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.zkmigration.core.PathCache;
+import com.zkmigration.core.TreeImporter;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+@Slf4j
+@Setter
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Import extends Change {
+    private String directory;
+    private String document;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private volatile HashedSource hashedSource;
+
+    private record HashedSource(List<String> source, String contentHash) {
+    }
+
+    @Override
+    public <T> T accept(ChangeVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    /**
+     * Hash of the imported paths and content, part of the changeset checksum so
+     * that editing the source counts as modifying the changeset. The source is
+     * read once per import and path; later calls reuse the hash.
+     */
+    @JsonProperty(value = "contentHash", access = JsonProperty.Access.READ_ONLY)
+    public String contentHash() {
+        List<String> source = Arrays.asList(getPath(), getDirectory(), getDocument());
+        HashedSource hashed = hashedSource;
+        if (hashed == null || !hashed.source().equals(source)) {
+            try {
+                hashed = new HashedSource(source, TreeImporter.contentHash(TreeImporter.expand(getPath(), getDirectory(), getDocument())));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            hashedSource = hashed;
+        }
+        return hashed.contentHash();
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client) throws Exception {
+        log.info("Importing {} into {}", getDirectory() != null ? getDirectory() : getDocument(), getPath());
+        new TreeImporter(client).importTree(TreeImporter.expand(getPath(), getDirectory(), getDocument()));
+    }
+
+    @Override
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client);
+        paths.created(getPath());
+    }
+}
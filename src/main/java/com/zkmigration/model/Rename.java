@@ -1,12 +1,11 @@
 package com.zkmigration.model;
 
+import com.zkmigration.core.PathCache;
+import com.zkmigration.core.SubtreeEngine;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.zookeeper.CreateMode;
-
-import java.util.List;
 
 @Slf4j
 @Setter
@@ -22,17 +21,13 @@ public class Rename extends Change {
     @Override
     public void applyChange(CuratorFramework client) throws Exception {
         log.info("Renaming node from {} to {}", getPath(), getDestination());
-        renameNode(client, getPath(), getDestination());
+        new SubtreeEngine(client).move(getPath(), getDestination());
     }
 
-    private void renameNode(CuratorFramework client, String sourcePath, String destinationPath) throws Exception {
-        byte[] data = client.getData().forPath(sourcePath);
-        client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(destinationPath, data);
-
-        List<String> children = client.getChildren().forPath(sourcePath);
-        for (String child : children) {
-            renameNode(client, sourcePath + "/" + child, destinationPath + "/" + child);
-        }
-        client.delete().forPath(sourcePath);
+    @Override
+    public void applyChange(CuratorFramework client, PathCache paths) throws Exception {
+        applyChange(client);
+        paths.removed(getPath());
+        paths.created(getDestination());
     }
 }
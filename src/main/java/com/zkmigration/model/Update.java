@@ -1,6 +1,9 @@
 package com.zkmigration.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.zkmigration.core.ChunkedValues;
 import com.zkmigration.core.MigrationUtils;
+import com.zkmigration.core.PathCache;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -9,9 +12,10 @@ import org.apache.curator.framework.CuratorFramework;
 @Slf4j
 @Setter
 @Getter
-public class Update extends Change {
-    private String data;
-    private String file;
+public class Update extends DataChange {
+    /** When set, the update only succeeds if the node is still at this version. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer expectedVersion;
 
     @Override
     public <T> T accept(ChangeVisitor<T> visitor) {
@@ -19,9 +23,13 @@ public class Update extends Change {
     }
 
     @Override
-    public void applyChange(CuratorFramework client) throws Exception {
+    public void applyChange(CuratorFramework client, PathCache paths, byte[] data) throws Exception {
         log.info("Updating node: {}", getPath());
-        byte[] data = MigrationUtils.resolveData(getData(), getFile());
-        client.setData().forPath(getPath(), data);
+        int version = MigrationUtils.versionOrAny(getExpectedVersion());
+        if (Boolean.TRUE.equals(getChunked())) {
+            ChunkedValues.update(client, getPath(), data, version);
+        } else {
+            client.setData().withVersion(version).forPath(getPath(), data);
+        }
     }
 }
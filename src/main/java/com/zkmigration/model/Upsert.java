@@ -1,18 +1,22 @@
 package com.zkmigration.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.zkmigration.core.ChunkedValues;
 import com.zkmigration.core.MigrationUtils;
+import com.zkmigration.core.PathCache;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
-import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 
 @Slf4j
 @Setter
 @Getter
-public class Upsert extends Change {
-    private String data;
-    private String file;
+public class Upsert extends DataChange {
+    /** When set, an existing node is only updated if it is still at this version; a missing node is created. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer expectedVersion;
 
     @Override
     public <T> T accept(ChangeVisitor<T> visitor) {
@@ -20,13 +24,28 @@ public class Upsert extends Change {
     }
 
     @Override
-    public void applyChange(CuratorFramework client) throws Exception {
+    public void applyChange(CuratorFramework client, PathCache paths, byte[] data) throws Exception {
         log.info("Upserting node: {}", getPath());
-        byte[] data = MigrationUtils.resolveData(getData(), getFile());
-        if (client.checkExists().forPath(getPath()) != null) {
-            client.setData().forPath(getPath(), data);
-        } else {
-            client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT).forPath(getPath(), data);
+        int version = MigrationUtils.versionOrAny(getExpectedVersion());
+        if (Boolean.TRUE.equals(getChunked())) {
+            try {
+                ChunkedValues.update(client, getPath(), data, version);
+            } catch (KeeperException.NoNodeException e) {
+                ChunkedValues.create(client, getPath(), data);
+                paths.created(getPath());
+            }
+            return;
+        }
+        // Try the update first; only a missing node costs a second round trip
+        try {
+            client.setData().withVersion(version).forPath(getPath(), data);
+        } catch (KeeperException.NoNodeException e) {
+            try {
+                paths.create(getPath(), data);
+            } catch (KeeperException.NodeExistsException raced) {
+                // Created by someone else in between
+                client.setData().withVersion(version).forPath(getPath(), data);
+            }
         }
     }
 }
@@ -2,9 +2,11 @@ package com.zkmigration.parser;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.zkmigration.model.Change;
 import com.zkmigration.model.ChangeLog;
 import com.zkmigration.model.ChangeLogEntry;
 import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.DataChange;
 import com.zkmigration.model.Include;
 
 import java.io.File;
@@ -24,11 +26,12 @@ public class ChangeLogParser {
     }
 
     public ChangeLog parse(File file) throws IOException {
-        return parse(file, new HashMap<>(), new ArrayList<>(), new ArrayList<>());
+        return parse(file, new HashMap<>(), new ArrayList<>(), new ArrayList<>(), null);
     }
 
     private ChangeLog parse(File file, Map<String, List<String>> inheritedEnvironmentsGroups,
-                            List<String> inheritedEnvironments, List<String> inheritedLabels) throws IOException {
+                            List<String> inheritedEnvironments, List<String> inheritedLabels,
+                            Boolean inheritedCompress) throws IOException {
         ChangeLog changeLog;
         if (file.getName().endsWith(".json")) {
             changeLog = jsonMapper.readValue(file, ChangeLog.class);
@@ -63,6 +66,8 @@ public class ChangeLogParser {
         if (inheritedLabels != null) effectiveLabels.addAll(inheritedLabels);
         if (changeLog.getLabels() != null) effectiveLabels.addAll(changeLog.getLabels());
 
+        Boolean effectiveCompress = changeLog.getCompress() != null ? changeLog.getCompress() : inheritedCompress;
+
         List<ChangeLogEntry> flatEntries = new ArrayList<>();
         if (changeLog.getZookeeperChangeLog() != null) {
             for (ChangeLogEntry entry : changeLog.getZookeeperChangeLog()) {
@@ -86,12 +91,17 @@ public class ChangeLogParser {
                         throw new IllegalArgumentException("ChangeSet " + cs.getId() + " is missing mandatory labels");
                     }
 
+                    if (effectiveCompress != null) {
+                        applyCompressDefault(cs.getChanges(), effectiveCompress);
+                        applyCompressDefault(cs.getRollback(), effectiveCompress);
+                    }
+
                     flatEntries.add(cs);
                 } else if (entry instanceof Include include) {
                     File includedFile = new File(file.getParent(), include.getFile());
 
                     // Recursive parse
-                    ChangeLog includedLog = parse(includedFile, changeLog.getEnvironmentsGroups(), effectiveEnvironments, effectiveLabels);
+                    ChangeLog includedLog = parse(includedFile, changeLog.getEnvironmentsGroups(), effectiveEnvironments, effectiveLabels, effectiveCompress);
 
                     // Merge results
                     if (includedLog.getZookeeperChangeLog() != null) {
@@ -113,4 +123,15 @@ public class ChangeLogParser {
         changeLog.setZookeeperChangeLog(flatEntries);
         return changeLog;
     }
+
+    private static void applyCompressDefault(List<Change> changes, boolean compress) {
+        if (changes == null) {
+            return;
+        }
+        for (Change change : changes) {
+            if (change instanceof DataChange dataChange) {
+                dataChange.setDefaultCompress(compress);
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.zkmigration.cli;
 
+import com.zkmigration.core.TreeSnapshotReader;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryOneTime;
@@ -150,6 +151,86 @@ class MigrationCliSystemTest {
         assertThat(client.getChildren().forPath("/zookeeper-migrations/changelog")).hasSize(1);
     }
 
+    @Test
+    void testConvertHistoryThenUpdateWithSnapshotLayout() throws Exception {
+        String yaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "1"
+                      author: "test"
+                      environments: "test"
+                      labels: "test"
+                      changes:
+                        - create:
+                            path: "/snap1"
+                  - changeSet:
+                      id: "2"
+                      author: "test"
+                      environments: "test"
+                      labels: "later"
+                      changes:
+                        - create:
+                            path: "/snap2"
+                """;
+        Path file = tempDir.resolve("snapshot.yaml");
+        Files.writeString(file, yaml);
+
+        new picocli.CommandLine(new MigrationCli()).execute("update",
+            "--connection", server.getConnectString(),
+            "--file", file.toAbsolutePath().toString(),
+            "--env", "test",
+            "--labels", "test");
+
+        int convertExitCode = new picocli.CommandLine(new MigrationCli()).execute("convert-history",
+            "--connection", server.getConnectString());
+        assertThat(convertExitCode).isEqualTo(0);
+        assertThat(client.getChildren().forPath("/zookeeper-migrations/changelog")).containsExactlyInAnyOrder(".snapshot", ".segments");
+
+        int updateExitCode = new picocli.CommandLine(new MigrationCli()).execute("update",
+            "--connection", server.getConnectString(),
+            "--file", file.toAbsolutePath().toString(),
+            "--history-layout", "SNAPSHOT",
+            "--env", "test",
+            "--labels", "test,later");
+        assertThat(updateExitCode).isEqualTo(0);
+        assertThat(client.checkExists().forPath("/snap2")).isNotNull();
+
+        // The flat layout refuses a converted history
+        int flatExitCode = new picocli.CommandLine(new MigrationCli()).execute("update",
+            "--connection", server.getConnectString(),
+            "--file", file.toAbsolutePath().toString(),
+            "--env", "test",
+            "--labels", "test");
+        assertThat(flatExitCode).isEqualTo(1);
+    }
+
+    @Test
+    void testExportAndRestore() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/exported/child", "value".getBytes(StandardCharsets.UTF_8));
+        Path snapshot = tempDir.resolve("exported.snap");
+
+        int exitCode = new picocli.CommandLine(new MigrationCli()).execute("export",
+            "--connection", server.getConnectString(),
+            "--root", "/exported",
+            "--output", snapshot.toString(),
+            "--compress");
+
+        assertThat(exitCode).isEqualTo(0);
+        try (TreeSnapshotReader reader = new TreeSnapshotReader(snapshot)) {
+            assertThat(reader.next().path()).isEqualTo("/exported");
+            assertThat(reader.next().data()).isEqualTo("value".getBytes(StandardCharsets.UTF_8));
+            assertThat(reader.next()).isNull();
+        }
+
+        exitCode = new picocli.CommandLine(new MigrationCli()).execute("restore",
+            "--connection", server.getConnectString(),
+            "--input", snapshot.toString(),
+            "--root", "/restored");
+
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(new String(client.getData().forPath("/restored/child"), StandardCharsets.UTF_8)).isEqualTo("value");
+    }
+
     @Test
     void testMissingFile() {
         int exitCode = new picocli.CommandLine(new MigrationCli()).execute("update",
@@ -165,4 +246,68 @@ class MigrationCliSystemTest {
         MigrationCli cli = new MigrationCli();
         assertThat(cli.call()).isEqualTo(0);
     }
+
+    @Test
+    void testUpdateFansOutToSeveralEnsembles() throws Exception {
+        String yaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "fan-1"
+                      author: "system-test"
+                      environments: "test"
+                      labels: "test"
+                      changes:
+                        - create:
+                            path: "/fan-test"
+                            data: "fan-data"
+                """;
+        Path file = tempDir.resolve("fan-test.yaml");
+        Files.writeString(file, yaml);
+
+        try (TestingServer second = new TestingServer();
+             CuratorFramework secondClient = CuratorFrameworkFactory.newClient(second.getConnectString(), new RetryOneTime(1))) {
+            secondClient.start();
+            int exitCode = new picocli.CommandLine(new MigrationCli()).execute(
+                    "update", "-c", server.getConnectString(), "-c", second.getConnectString(),
+                    "--file", file.toAbsolutePath().toString(), "--env", "test", "--labels", "test",
+                    "--fan-out-policy", "BEST_EFFORT");
+
+            assertThat(exitCode).isEqualTo(0);
+            assertThat(client.getData().forPath("/fan-test")).isEqualTo("fan-data".getBytes(StandardCharsets.UTF_8));
+            assertThat(secondClient.getData().forPath("/fan-test")).isEqualTo("fan-data".getBytes(StandardCharsets.UTF_8));
+        }
+
+        int exportExitCode = new picocli.CommandLine(new MigrationCli()).execute(
+                "export", "-c", server.getConnectString(), "-c", server.getConnectString(),
+                "-r", "/fan-test", "-o", tempDir.resolve("fan.snap").toString());
+        assertThat(exportExitCode).isEqualTo(1);
+    }
+
+    @Test
+    void testUpdateMigratesEveryTenant() throws Exception {
+        String yaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "tenant-1"
+                      author: "system-test"
+                      environments: "test"
+                      labels: "test"
+                      changes:
+                        - create:
+                            path: "/tenant-test/{tenant}/config"
+                            data: "tenant-data"
+                """;
+        Path file = tempDir.resolve("tenant-test.yaml");
+        Files.writeString(file, yaml);
+
+        int exitCode = new picocli.CommandLine(new MigrationCli()).execute(
+                "update", "-c", server.getConnectString(), "-p", "/tenant-test/{tenant}/migrations",
+                "--file", file.toAbsolutePath().toString(), "--env", "test", "--labels", "test",
+                "--tenants", "a,b", "--tenant-concurrency", "2");
+
+        assertThat(exitCode).isEqualTo(0);
+        assertThat(client.getData().forPath("/tenant-test/a/config")).isEqualTo("tenant-data".getBytes(StandardCharsets.UTF_8));
+        assertThat(client.getData().forPath("/tenant-test/b/config")).isEqualTo("tenant-data".getBytes(StandardCharsets.UTF_8));
+        assertThat(client.checkExists().forPath("/tenant-test/b/migrations/changelog")).isNotNull();
+    }
 }
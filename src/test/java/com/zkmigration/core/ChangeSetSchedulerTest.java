@@ -0,0 +1,116 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.Delete;
+import com.zkmigration.model.Rename;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChangeSetSchedulerTest {
+
+    private static ChangeSet changeSet(String id, Change... changes) {
+        ChangeSet cs = new ChangeSet();
+        cs.setId(id);
+        cs.setChanges(List.of(changes));
+        return cs;
+    }
+
+    private static Create create(String path) {
+        Create create = new Create();
+        create.setPath(path);
+        return create;
+    }
+
+    private static Delete delete(String path) {
+        Delete delete = new Delete();
+        delete.setPath(path);
+        return delete;
+    }
+
+    private static Rename rename(String path, String destination) {
+        Rename rename = new Rename();
+        rename.setPath(path);
+        rename.setDestination(destination);
+        return rename;
+    }
+
+    @Test
+    void testDependencies() {
+        List<Set<Integer>> deps = ChangeSetScheduler.dependencies(List.of(
+                changeSet("0", create("/a/x")),
+                changeSet("1", create("/b/x")),
+                changeSet("2", create("/a/y")),
+                changeSet("3", delete("/a")),
+                changeSet("4", create("/a/z")),
+                changeSet("5", rename("/c", "/b/x/moved")),
+                changeSet("6", create("/abc"))));
+
+        assertThat(deps.get(0)).isEmpty();
+        assertThat(deps.get(1)).isEmpty();
+        // Siblings do not conflict
+        assertThat(deps.get(2)).isEmpty();
+        // An ancestor waits for everything below it
+        assertThat(deps.get(3)).containsExactly(0, 2);
+        assertThat(deps.get(4)).containsExactly(3);
+        // The rename destination lies below /b/x
+        assertThat(deps.get(5)).containsExactly(1);
+        // A shared name prefix is not an ancestor
+        assertThat(deps.get(6)).isEmpty();
+    }
+
+    @Test
+    void testRunsIndependentChangeSetsConcurrentlyAndConflictingInOrder() throws Exception {
+        CountDownLatch bothIndependentStarted = new CountDownLatch(2);
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            new ChangeSetScheduler(pool, 4).run(List.of(
+                    changeSet("a", create("/a/x")),
+                    changeSet("b", create("/b/x")),
+                    changeSet("a-parent", delete("/a"))), cs -> {
+                if (!cs.getId().equals("a-parent")) {
+                    bothIndependentStarted.countDown();
+                    // Only returns if the other independent changeset runs at the same time
+                    assertThat(bothIndependentStarted.await(10, TimeUnit.SECONDS)).isTrue();
+                }
+                finished.add(cs.getId());
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(finished).containsExactlyInAnyOrder("a", "b", "a-parent");
+        assertThat(finished.indexOf("a-parent")).isGreaterThan(finished.indexOf("a"));
+    }
+
+    @Test
+    void testStopsAfterFailureAndReportsEarliest() {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            assertThatThrownBy(() -> new ChangeSetScheduler(pool, 4).run(List.of(
+                    changeSet("fails", create("/a")),
+                    changeSet("dependent", create("/a/child"))), cs -> {
+                started.add(cs.getId());
+                throw new IllegalStateException("boom " + cs.getId());
+            })).isInstanceOf(IllegalStateException.class).hasMessage("boom fails");
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(started).containsExactly("fails");
+    }
+}
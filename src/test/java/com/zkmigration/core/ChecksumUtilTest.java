@@ -3,6 +3,10 @@ package com.zkmigration.core;
 import com.zkmigration.model.ChangeSet;
 import com.zkmigration.model.Create;
 import com.zkmigration.model.Change;
+import com.zkmigration.model.Delete;
+import com.zkmigration.model.Rename;
+import com.zkmigration.model.Update;
+import com.zkmigration.model.Upsert;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collections;
@@ -55,4 +59,29 @@ class ChecksumUtilTest {
 
         assertThat(sum1).isNotEqualTo(sum2);
     }
+
+    @Test
+    void testChecksumOfExistingChangeTypesIsStable() {
+        // Checksums are stored in the history; new optional fields must not change them
+        ChangeSet cs = new ChangeSet();
+        cs.setId("1");
+        cs.setAuthor("me");
+        Create create = new Create();
+        create.setPath("/path");
+        create.setData("data");
+        Update update = new Update();
+        update.setPath("/u");
+        update.setData("x");
+        Upsert upsert = new Upsert();
+        upsert.setPath("/up");
+        upsert.setFile("f.json");
+        Delete delete = new Delete();
+        delete.setPath("/d");
+        Rename rename = new Rename();
+        rename.setPath("/a");
+        rename.setDestination("/b");
+        cs.setChanges(List.of(create, update, upsert, delete, rename));
+
+        assertThat(ChecksumUtil.calculateChecksum(cs)).isEqualTo("592e36f7149d622f281ad040159c76f3");
+    }
 }
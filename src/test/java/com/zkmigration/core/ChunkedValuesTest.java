@@ -0,0 +1,144 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.Update;
+import com.zkmigration.model.Upsert;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedValuesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private Path largeFile(String name, char fill, int size) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, String.valueOf(fill).repeat(size));
+        return file;
+    }
+
+    private void run(String id, Change change) throws Exception {
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId(id);
+        changeSet.setChanges(List.of(change));
+        new MigrationExecutor(client).execute(changeSet);
+    }
+
+    @Test
+    void testCreateAndUpdateValuesAboveTheZnodeLimit() throws Exception {
+        Path first = largeFile("first.json", 'a', 1_500_000);
+        Create create = new Create();
+        create.setPath("/large/config");
+        create.setFile(first.toString());
+        create.setChunked(true);
+        run("chunked-1", create);
+
+        assertThat(ChunkedValues.isManifest(client.getData().forPath("/large/config"))).isTrue();
+        assertThat(client.getChildren().forPath("/large/config")).hasSize(6);
+        assertThat(ChunkedValues.read(client, "/large/config", null)).isEqualTo(Files.readAllBytes(first));
+        try (InputStream in = ChunkedValues.open(client, "/large/config")) {
+            assertThat(in.readAllBytes()).isEqualTo(Files.readAllBytes(first));
+        }
+
+        Path second = largeFile("second.json", 'b', 600_000);
+        Update update = new Update();
+        update.setPath("/large/config");
+        update.setFile(second.toString());
+        update.setChunked(true);
+        run("chunked-2", update);
+
+        assertThat(ChunkedValues.read(client, "/large/config", null)).isEqualTo(Files.readAllBytes(second));
+        // Only the new generation's chunks are left
+        assertThat(client.getChildren().forPath("/large/config")).hasSize(3);
+    }
+
+    @Test
+    void testUpsertChunkedAndPlainValuesReadTheSame() throws Exception {
+        client.create().forPath("/plain", "small".getBytes(StandardCharsets.UTF_8));
+        assertThat(ChunkedValues.read(client, "/plain", null)).isEqualTo("small".getBytes(StandardCharsets.UTF_8));
+
+        Upsert upsert = new Upsert();
+        upsert.setPath("/plain");
+        upsert.setData("x".repeat(300_000));
+        upsert.setChunked(true);
+        run("chunked-3", upsert);
+        assertThat(new String(ChunkedValues.read(client, "/plain", null), StandardCharsets.UTF_8)).isEqualTo("x".repeat(300_000));
+
+        upsert.setPath("/fresh/value");
+        run("chunked-4", upsert);
+        assertThat(client.getChildren().forPath("/fresh/value")).hasSize(2);
+    }
+
+    @Test
+    void testExpectedVersionAppliesToTheManifestNode() throws Exception {
+        Create create = new Create();
+        create.setPath("/versioned");
+        create.setData("v".repeat(10));
+        create.setChunked(true);
+        run("chunked-5", create);
+
+        Update update = new Update();
+        update.setPath("/versioned");
+        update.setData("w".repeat(10));
+        update.setChunked(true);
+        update.setExpectedVersion(0);
+
+        assertThatThrownBy(() -> run("chunked-6", update)).isInstanceOf(KeeperException.BadVersionException.class);
+        update.setExpectedVersion(1);
+        run("chunked-6", update);
+        assertThat(new String(ChunkedValues.read(client, "/versioned", null), StandardCharsets.UTF_8)).isEqualTo("w".repeat(10));
+    }
+
+    @Test
+    void testInspectorDiffsReassembledValues() throws Exception {
+        Create create = new Create();
+        create.setPath("/inspected");
+        create.setData("old-value");
+        create.setChunked(true);
+        run("chunked-7", create);
+
+        Update update = new Update();
+        update.setPath("/inspected");
+        update.setData("new-value");
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("chunked-8");
+        changeSet.setChanges(List.of(update));
+
+        String report = new MigrationInspector(client).inspect(changeSet, false);
+        assertThat(report).contains("old-value").contains("new-value").doesNotContain("zkChunkedValue");
+    }
+}
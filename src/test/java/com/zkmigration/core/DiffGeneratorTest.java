@@ -15,6 +15,14 @@ public class DiffGeneratorTest {
         assertThat(diff).isEmpty();
     }
 
+    @Test
+    public void testCompressedValuesAreComparedByContent() {
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+        assertThat(DiffGenerator.generateDiff(ValueCompression.compress(data), data)).isEmpty();
+        String diff = DiffGenerator.generateDiff(ValueCompression.compress(data), ValueCompression.compress("world".getBytes(StandardCharsets.UTF_8)));
+        assertThat(diff).contains("* [-hello-] {+world+}");
+    }
+
     @Test
     public void testSimpleChange() {
         byte[] oldData = "hello".getBytes(StandardCharsets.UTF_8);
@@ -0,0 +1,112 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Create;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnsembleFanOutTest {
+
+    private TestingServer healthy;
+    private TestingServer conflicting;
+    private CuratorFramework healthyClient;
+    private CuratorFramework conflictingClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        healthy = new TestingServer();
+        conflicting = new TestingServer();
+        healthyClient = client(healthy.getConnectString());
+        conflictingClient = client(conflicting.getConnectString());
+        // The first changeset fails on this ensemble
+        conflictingClient.create().forPath("/fan-out-1");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        healthyClient.close();
+        conflictingClient.close();
+        healthy.close();
+        conflicting.close();
+    }
+
+    private static CuratorFramework client(String connectionString) {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(connectionString, new RetryOneTime(1));
+        client.start();
+        return client;
+    }
+
+    private static ChangeLog changeLog() {
+        List<ChangeSet> changeSets = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            ChangeSet cs = new ChangeSet();
+            cs.setId("fan-out-" + i);
+            cs.setAuthor("test");
+            cs.setEnvironments(List.of("test"));
+            cs.setLabels(List.of("app"));
+            Create create = new Create();
+            create.setPath("/fan-out-" + i);
+            create.setData("v" + i);
+            cs.setChanges(List.of(create));
+            changeSets.add(cs);
+        }
+        ChangeLog changeLog = new ChangeLog();
+        changeLog.setZookeeperChangeLog(new ArrayList<>(changeSets));
+        return changeLog;
+    }
+
+    private List<FanOut.Result> run(FanOutPolicy policy, Function<String, CuratorFramework> factory) throws Exception {
+        ChangeLog changeLog = changeLog();
+        return new EnsembleFanOut(List.of(healthy.getConnectString(), conflicting.getConnectString()), factory,
+                "/zookeeper-migrations", new MigrationOptions(), policy)
+                .run(changeLog, service -> service.update(changeLog, "test", List.of("app")));
+    }
+
+    @Test
+    void testBestEffortMigratesEveryEnsembleAndReportsEach() throws Exception {
+        List<FanOut.Result> results = run(FanOutPolicy.BEST_EFFORT, EnsembleFanOutTest::client);
+
+        assertThat(results).extracting(FanOut.Result::target)
+                .containsExactly(healthy.getConnectString(), conflicting.getConnectString());
+        assertThat(results.get(0).status()).isEqualTo(FanOut.Status.SUCCEEDED);
+        assertThat(results.get(0).writes().written()).isEqualTo(2);
+        assertThat(results.get(1).status()).isEqualTo(FanOut.Status.FAILED);
+        assertThat(results.get(1).error()).isInstanceOf(org.apache.zookeeper.KeeperException.NodeExistsException.class);
+
+        assertThat(healthyClient.checkExists().forPath("/fan-out-2")).isNotNull();
+        assertThat(new MigrationStateService(healthyClient, "/zookeeper-migrations/changelog").getExecutedChangeSetIds())
+                .containsExactlyInAnyOrder("fan-out-1", "fan-out-2");
+        assertThat(new MigrationStateService(conflictingClient, "/zookeeper-migrations/changelog").getExecutedChangeSetIds()).isEmpty();
+    }
+
+    @Test
+    void testFailFastStopsTheOtherEnsembles() throws Exception {
+        // The healthy ensemble connects late, after the other one has failed
+        List<FanOut.Result> results = run(FanOutPolicy.FAIL_FAST, connectionString -> {
+            if (connectionString.equals(healthy.getConnectString())) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return client(connectionString);
+        });
+
+        assertThat(results.get(0).status()).isEqualTo(FanOut.Status.STOPPED);
+        assertThat(results.get(1).status()).isEqualTo(FanOut.Status.FAILED);
+        assertThat(healthyClient.checkExists().forPath("/fan-out-1")).isNull();
+    }
+}
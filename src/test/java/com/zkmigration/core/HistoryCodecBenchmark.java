@@ -0,0 +1,63 @@
+package com.zkmigration.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of decoding 100k history records stored as JSON and as Smile.
+ * Run with {@code mvn test -Dbenchmark=true -Dtest=HistoryCodecBenchmark}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HistoryCodecBenchmark {
+    private static final int RECORDS = 100_000;
+
+    @Param({"JSON", "SMILE"})
+    public HistoryEncoding encoding;
+
+    private HistoryCodec codec;
+    private byte[][] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        codec = new HistoryCodec(encoding);
+        encoded = new byte[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            encoded[i] = codec.encode(new MigrationStateService.ExecutedChangeSet(
+                    "changeset-" + i, "author-" + (i % 10), 1_700_000_000_000L + i, Integer.toHexString(i * 31)));
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws Exception {
+        for (byte[] data : encoded) {
+            blackhole.consume(codec.decode(data, MigrationStateService.ExecutedChangeSet.class));
+        }
+    }
+
+    @Test
+    void runBenchmark() throws Exception {
+        // Surefire's classpath is not visible to forked JVMs, so measure in-process
+        new Runner(new OptionsBuilder()
+                .include(HistoryCodecBenchmark.class.getSimpleName())
+                .forks(0)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .build()).run();
+    }
+}
@@ -0,0 +1,47 @@
+package com.zkmigration.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistoryCodecTest {
+
+    private final MigrationStateService.ExecutedChangeSet record =
+            new MigrationStateService.ExecutedChangeSet("cs-1", "alice", 1234L, "abc");
+
+    @Test
+    void testSmileRoundTripStartsWithMarker() throws Exception {
+        HistoryCodec codec = new HistoryCodec(HistoryEncoding.SMILE);
+
+        byte[] data = codec.encode(record);
+
+        assertThat(data[0]).isEqualTo(HistoryCodec.SMILE_MARKER);
+        assertThat(data.length).isLessThan(new HistoryCodec(HistoryEncoding.JSON).encode(record).length);
+        assertThat(codec.decode(data, MigrationStateService.ExecutedChangeSet.class))
+                .usingRecursiveComparison().isEqualTo(record);
+    }
+
+    @Test
+    void testJsonCodecWritesPlainJson() throws Exception {
+        byte[] data = new HistoryCodec(HistoryEncoding.JSON).encode(record);
+
+        assertThat(new String(data, StandardCharsets.UTF_8)).startsWith("{").contains("\"id\":\"cs-1\"");
+    }
+
+    @Test
+    void testEitherCodecDecodesBothEncodings() throws Exception {
+        byte[] json = "{\"id\":\"cs-1\",\"author\":\"alice\",\"executedAt\":1234,\"checksum\":\"abc\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] smile = new HistoryCodec(HistoryEncoding.SMILE).encode(record);
+
+        for (HistoryEncoding encoding : HistoryEncoding.values()) {
+            HistoryCodec codec = new HistoryCodec(encoding);
+            assertThat(codec.decode(json, MigrationStateService.ExecutedChangeSet.class))
+                    .usingRecursiveComparison().isEqualTo(record);
+            assertThat(codec.decode(smile, MigrationStateService.ExecutedChangeSet.class))
+                    .usingRecursiveComparison().isEqualTo(record);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.zkmigration.core;
 
+import com.zkmigration.model.Change;
 import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Copy;
 import com.zkmigration.model.Create;
 import com.zkmigration.model.Delete;
 import com.zkmigration.model.Rename;
@@ -10,6 +12,7 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryOneTime;
 import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -96,6 +99,27 @@ class MigrationExecutorTest {
         assertThat(client.checkExists().forPath("/test/delete")).isNull();
     }
 
+    @Test
+    void testExecuteRecursiveDelete() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            client.create().creatingParentsIfNeeded().forPath("/test/tree/branch-" + (i % 3) + "/leaf-" + i, "x".getBytes(StandardCharsets.UTF_8));
+        }
+        client.create().forPath("/test/tree-sibling");
+
+        Delete delete = new Delete();
+        delete.setPath("/test/tree");
+        delete.setRecursive(true);
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("3b");
+        changeSet.setChanges(List.of(delete));
+
+        executor.execute(changeSet);
+
+        assertThat(client.checkExists().forPath("/test/tree")).isNull();
+        assertThat(client.checkExists().forPath("/test/tree-sibling")).isNotNull();
+    }
+
     @Test
     void testRollback() throws Exception {
         // Setup initial state
@@ -153,6 +177,25 @@ class MigrationExecutorTest {
         assertThat(new String(childData, StandardCharsets.UTF_8)).isEqualTo("child-data");
     }
 
+    @Test
+    void testExecuteCopy() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/test/copy/source/child", "child-data".getBytes(StandardCharsets.UTF_8));
+
+        Copy copy = new Copy();
+        copy.setPath("/test/copy/source");
+        copy.setDestination("/test/copy/destination");
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("copy-1");
+        changeSet.setChanges(List.of(copy));
+
+        executor.execute(changeSet);
+
+        assertThat(client.checkExists().forPath("/test/copy/source/child")).isNotNull();
+        byte[] childData = client.getData().forPath("/test/copy/destination/child");
+        assertThat(new String(childData, StandardCharsets.UTF_8)).isEqualTo("child-data");
+    }
+
     @Test
     void testExecuteUpsertCreates() throws Exception {
         Upsert upsert = new Upsert();
@@ -187,6 +230,55 @@ class MigrationExecutorTest {
         assertThat(new String(data, StandardCharsets.UTF_8)).isEqualTo("upsert-update-data");
     }
 
+    @Test
+    void testExecuteUpdateWithExpectedVersionDetectsConcurrentEdit() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/test/cas", "v0".getBytes(StandardCharsets.UTF_8));
+        client.setData().forPath("/test/cas", "edited-out-of-band".getBytes(StandardCharsets.UTF_8));
+
+        Update update = new Update();
+        update.setPath("/test/cas");
+        update.setData("migrated");
+        update.setExpectedVersion(0);
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("cas-1");
+        changeSet.setChanges(List.of(update));
+
+        assertThatThrownBy(() -> executor.execute(changeSet))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.BadVersionException.class);
+        assertThatThrownBy(() -> executor.executePipelined(changeSet))
+                .isInstanceOf(PipelineExecutionException.class)
+                .hasCauseInstanceOf(org.apache.zookeeper.KeeperException.BadVersionException.class);
+        assertThat(new String(client.getData().forPath("/test/cas"), StandardCharsets.UTF_8)).isEqualTo("edited-out-of-band");
+
+        update.setExpectedVersion(1);
+        executor.execute(changeSet);
+        assertThat(new String(client.getData().forPath("/test/cas"), StandardCharsets.UTF_8)).isEqualTo("migrated");
+    }
+
+    @Test
+    void testExecuteUpsertWithExpectedVersion() throws Exception {
+        Upsert upsert = new Upsert();
+        upsert.setPath("/test/upsert/cas");
+        upsert.setData("created");
+        upsert.setExpectedVersion(0);
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("cas-2");
+        changeSet.setChanges(List.of(upsert));
+
+        // A missing node is created; the created node is at version 0, so the next run updates it
+        executor.execute(changeSet);
+        upsert.setData("updated");
+        executor.execute(changeSet);
+        assertThat(new String(client.getData().forPath("/test/upsert/cas"), StandardCharsets.UTF_8)).isEqualTo("updated");
+
+        upsert.setData("stale");
+        assertThatThrownBy(() -> executor.execute(changeSet))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.BadVersionException.class);
+        assertThat(new String(client.getData().forPath("/test/upsert/cas"), StandardCharsets.UTF_8)).isEqualTo("updated");
+    }
+
     @Test
     void testExecuteCreateWithFile() throws Exception {
         // Create a temporary file
@@ -225,4 +317,415 @@ class MigrationExecutorTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("Cannot provide both 'data' and 'file'");
     }
+
+    private MigrationStateService stateService(MigrationOptions options) {
+        return new MigrationStateService(client, "/zookeeper-migrations/changelog", options);
+    }
+
+    @Test
+    void testExecuteAtomicallyCommitsChangesAndMarker() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/atomic/existing", "old".getBytes(StandardCharsets.UTF_8));
+        client.create().creatingParentsIfNeeded().forPath("/atomic/obsolete");
+
+        Create create = new Create();
+        create.setPath("/atomic/deep/new");
+        create.setData("created");
+        Upsert upsertExisting = new Upsert();
+        upsertExisting.setPath("/atomic/existing");
+        upsertExisting.setData("upserted");
+        Upsert upsertAfterCreate = new Upsert();
+        upsertAfterCreate.setPath("/atomic/deep/new");
+        upsertAfterCreate.setData("created-then-upserted");
+        Update update = new Update();
+        update.setPath("/atomic/existing");
+        update.setData("updated");
+        Delete delete = new Delete();
+        delete.setPath("/atomic/obsolete");
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("atomic-1");
+        changeSet.setChanges(List.of(create, upsertExisting, upsertAfterCreate, update, delete));
+
+        MigrationStateService state = stateService(new MigrationOptions());
+        executor.executeAtomically(changeSet, state.prepareMarker("atomic-1", "me", "desc", "sum"));
+
+        assertThat(new String(client.getData().forPath("/atomic/deep/new"), StandardCharsets.UTF_8)).isEqualTo("created-then-upserted");
+        assertThat(new String(client.getData().forPath("/atomic/existing"), StandardCharsets.UTF_8)).isEqualTo("updated");
+        assertThat(client.checkExists().forPath("/atomic/obsolete")).isNull();
+        assertThat(state.getExecutedChangeSets().get("atomic-1").checksum).isEqualTo("sum");
+    }
+
+    @Test
+    void testExecuteAtomicallyLeavesNothingOnFailure() throws Exception {
+        Create create = new Create();
+        create.setPath("/atomic/first");
+        Update update = new Update();
+        update.setPath("/atomic/missing");
+        update.setData("x");
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("atomic-2");
+        changeSet.setChanges(List.of(create, update));
+
+        MigrationStateService state = stateService(new MigrationOptions());
+        HistoryMarker marker = state.prepareMarker("atomic-2", "me", "desc", "sum");
+        assertThatThrownBy(() -> executor.executeAtomically(changeSet, marker))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.NoNodeException.class);
+
+        assertThat(client.checkExists().forPath("/atomic")).isNull();
+        assertThat(state.getExecutedChangeSetIds()).isEmpty();
+    }
+
+    @Test
+    void testExecuteAtomicallySplitsLargeChangeSets() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxTransactionBytes(4096);
+        options.setHistoryLayout(HistoryLayout.SNAPSHOT);
+        MigrationExecutor smallTransactions = new MigrationExecutor(client, options);
+
+        List<Change> changes = new java.util.ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Create create = new Create();
+            create.setPath("/split/node-" + i);
+            create.setData("x".repeat(1000));
+            changes.add(create);
+        }
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("atomic-3");
+        changeSet.setChanges(changes);
+
+        MigrationStateService state = stateService(options);
+        smallTransactions.executeAtomically(changeSet, state.prepareMarker("atomic-3", "me", "desc", "sum"));
+
+        assertThat(client.getChildren().forPath("/split")).hasSize(20);
+        assertThat(state.getExecutedChangeSetIds()).containsExactly("atomic-3");
+    }
+
+    @Test
+    void testExecuteAtomicallyFallsBackForRename() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/atomic/from", "data".getBytes(StandardCharsets.UTF_8));
+        Rename rename = new Rename();
+        rename.setPath("/atomic/from");
+        rename.setDestination("/atomic/to");
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("atomic-4");
+        changeSet.setChanges(List.of(rename));
+
+        MigrationStateService state = stateService(new MigrationOptions());
+        executor.executeAtomically(changeSet, state.prepareMarker("atomic-4", "me", "desc", "sum"));
+
+        assertThat(client.checkExists().forPath("/atomic/to")).isNotNull();
+        assertThat(state.getExecutedChangeSetIds()).containsExactly("atomic-4");
+    }
+
+    @Test
+    void testUnsupportedChangesAreFoundBeforeCompiling() {
+        Create create = new Create();
+        create.setPath("/atomic/plain");
+        Create chunked = new Create();
+        chunked.setPath("/atomic/chunked");
+        chunked.setChunked(true);
+        Delete recursive = new Delete();
+        recursive.setPath("/atomic");
+        recursive.setRecursive(true);
+
+        assertThat(TransactionCompiler.unsupportedReason(List.of(create))).isNull();
+        assertThat(TransactionCompiler.unsupportedReason(List.of(create, chunked))).contains("chunked");
+        assertThat(TransactionCompiler.unsupportedReason(List.of(recursive))).contains("recursive delete");
+    }
+
+    @Test
+    void testExecuteCompressedValuesInEveryMode() throws Exception {
+        String value = "{\"setting\": \"value\"}\n".repeat(200);
+        MigrationOptions options = new MigrationOptions();
+        MigrationExecutor compressing = new MigrationExecutor(client, options);
+
+        Create create = new Create();
+        create.setPath("/compressed/sequential");
+        create.setData(value);
+        create.setCompress(true);
+        ChangeSet sequential = new ChangeSet();
+        sequential.setId("compress-1");
+        sequential.setChanges(List.of(create));
+        compressing.execute(sequential);
+
+        Upsert upsert = new Upsert();
+        upsert.setPath("/compressed/atomic");
+        upsert.setData(value);
+        upsert.setDefaultCompress(true);
+        Update plain = new Update();
+        plain.setPath("/compressed/sequential");
+        plain.setData(value);
+        plain.setCompress(false);
+        plain.setDefaultCompress(true);
+        ChangeSet atomic = new ChangeSet();
+        atomic.setId("compress-2");
+        atomic.setChanges(List.of(upsert, plain));
+        compressing.executeAtomically(atomic, stateService(options).prepareMarker("compress-2", "me", "desc", "sum"));
+
+        Update update = new Update();
+        update.setPath("/compressed/atomic");
+        update.setData("changed");
+        update.setCompress(true);
+        ChangeSet pipelined = new ChangeSet();
+        pipelined.setId("compress-3");
+        pipelined.setChanges(List.of(update));
+        compressing.executePipelined(pipelined);
+
+        byte[] stored = client.getData().forPath("/compressed/sequential");
+        assertThat(ValueCompression.isCompressed(stored)).isFalse();
+        assertThat(new String(stored, StandardCharsets.UTF_8)).isEqualTo(value);
+        byte[] compressed = client.getData().forPath("/compressed/atomic");
+        assertThat(ValueCompression.isCompressed(compressed)).isTrue();
+        assertThat(new String(ValueCompression.decode(compressed), StandardCharsets.UTF_8)).isEqualTo("changed");
+    }
+
+    @Test
+    void testCompressedValueIsSmallerAndDecodes() throws Exception {
+        String value = "line of configuration\n".repeat(500);
+        Create create = new Create();
+        create.setPath("/compressed/large");
+        create.setData(value);
+        create.setCompress(true);
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("compress-4");
+        changeSet.setChanges(List.of(create));
+        executor.execute(changeSet);
+
+        byte[] stored = client.getData().forPath("/compressed/large");
+        assertThat(stored.length).isLessThan(value.length() / 10);
+        assertThat(new String(ValueCompression.decode(stored), StandardCharsets.UTF_8)).isEqualTo(value);
+
+        Update update = new Update();
+        update.setPath("/compressed/large");
+        update.setData(value.replace("configuration", "settings"));
+        ChangeSet next = new ChangeSet();
+        next.setId("compress-5");
+        next.setChanges(List.of(update));
+        String report = new MigrationInspector(client).inspect(next, false);
+        assertThat(report).contains("configuration").contains("settings").doesNotContain("Binary data");
+    }
+
+    @Test
+    void testSkipUnchangedWritesLeavesVersionsAlone() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/seeded/same", "value".getBytes(StandardCharsets.UTF_8));
+        client.create().creatingParentsIfNeeded().forPath("/seeded/other", "old".getBytes(StandardCharsets.UTF_8));
+        client.create().creatingParentsIfNeeded().forPath("/seeded/rewritten", "value".getBytes(StandardCharsets.UTF_8));
+        MigrationOptions options = new MigrationOptions();
+        options.setSkipUnchangedWrites(true);
+        MigrationExecutor skipping = new MigrationExecutor(client, options);
+
+        Update same = new Update();
+        same.setPath("/seeded/same");
+        same.setData("value");
+        Upsert other = new Upsert();
+        other.setPath("/seeded/other");
+        other.setData("new");
+        // The prefetched data of a path changed earlier in the changeset is stale, so this write is kept
+        Update first = new Update();
+        first.setPath("/seeded/rewritten");
+        first.setData("changed");
+        Update back = new Update();
+        back.setPath("/seeded/rewritten");
+        back.setData("value");
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("skip-1");
+        changeSet.setChanges(List.of(same, other, first, back));
+        skipping.execute(changeSet);
+
+        assertThat(client.checkExists().forPath("/seeded/same").getVersion()).isZero();
+        assertThat(new String(client.getData().forPath("/seeded/other"), StandardCharsets.UTF_8)).isEqualTo("new");
+        assertThat(new String(client.getData().forPath("/seeded/rewritten"), StandardCharsets.UTF_8)).isEqualTo("value");
+        assertThat(client.checkExists().forPath("/seeded/rewritten").getVersion()).isEqualTo(2);
+        assertThat(skipping.getWriteStats()).isEqualTo(new MigrationExecutor.WriteStats(3, 1));
+
+        ChangeSet atomic = new ChangeSet();
+        atomic.setId("skip-2");
+        atomic.setChanges(List.of(same, other));
+        skipping.executeAtomically(atomic, stateService(options).prepareMarker("skip-2", "me", "desc", "sum"));
+        assertThat(client.checkExists().forPath("/seeded/other").getVersion()).isEqualTo(1);
+        assertThat(skipping.getWriteStats()).isEqualTo(new MigrationExecutor.WriteStats(3, 3));
+
+        // Compared as each change is reached, with compressed payloads prepared ahead
+        Upsert compressed = new Upsert();
+        compressed.setPath("/seeded/compressed");
+        compressed.setData("value");
+        compressed.setCompress(true);
+        ChangeSet pipelined = new ChangeSet();
+        pipelined.setId("skip-pipelined");
+        pipelined.setChanges(List.of(same, other, compressed));
+        skipping.beginRun();
+        skipping.executePipelined(pipelined);
+        skipping.executePipelined(pipelined);
+        assertThat(client.checkExists().forPath("/seeded/compressed").getVersion()).isZero();
+        assertThat(skipping.getWriteStats()).isEqualTo(new MigrationExecutor.WriteStats(1, 5));
+
+        // A stale expected version still fails even though the data matches
+        same.setExpectedVersion(5);
+        ChangeSet conflicting = new ChangeSet();
+        conflicting.setId("skip-3");
+        conflicting.setChanges(List.of(same));
+        assertThatThrownBy(() -> skipping.execute(conflicting)).isInstanceOf(KeeperException.BadVersionException.class);
+    }
+
+    @Test
+    void testThrottledWritesInEveryMode() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxWriteOpsPerSecond(50);
+        options.setAdaptiveThrottling(true);
+        MigrationExecutor throttled = new MigrationExecutor(client, options);
+
+        for (String mode : List.of("sequential", "pipelined", "atomic")) {
+            List<Change> changes = new java.util.ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Create create = new Create();
+                create.setPath("/throttled/" + mode + "/node-" + i);
+                create.setData("v" + i);
+                changes.add(create);
+            }
+            ChangeSet changeSet = new ChangeSet();
+            changeSet.setId("throttle-" + mode);
+            changeSet.setChanges(changes);
+            switch (mode) {
+                case "sequential" -> throttled.execute(changeSet);
+                case "pipelined" -> throttled.executePipelined(changeSet);
+                default -> throttled.executeAtomically(changeSet, stateService(options).prepareMarker(changeSet.getId(), "me", "desc", "sum"));
+            }
+            assertThat(client.getChildren().forPath("/throttled/" + mode)).hasSize(10);
+        }
+
+        // Ten single writes in each of the first two modes, then one transaction of the parent, ten creates and the marker
+        WriteThrottle.Stats stats = throttled.getThrottleStats();
+        assertThat(stats.operations()).isEqualTo(32);
+        assertThat(stats.waits()).isPositive();
+        throttled.beginRun();
+        assertThat(throttled.getThrottleStats().operations()).isZero();
+    }
+
+    @Test
+    void testExecutePipelinedKeepsOrderOnSamePathAndAncestors() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxInFlightWrites(8);
+        MigrationExecutor pipelined = new MigrationExecutor(client, options);
+        client.create().creatingParentsIfNeeded().forPath("/pipe/old/child");
+
+        List<Change> changes = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Create create = new Create();
+            create.setPath("/pipe/nodes/node-" + i);
+            create.setData("v" + i);
+            changes.add(create);
+        }
+        for (int i = 0; i < 100; i += 10) {
+            Update update = new Update();
+            update.setPath("/pipe/nodes/node-" + i);
+            update.setData("updated-" + i);
+            changes.add(update);
+        }
+        Delete deleteChild = new Delete();
+        deleteChild.setPath("/pipe/old/child");
+        Delete deleteParent = new Delete();
+        deleteParent.setPath("/pipe/old");
+        Upsert recreate = new Upsert();
+        recreate.setPath("/pipe/old/again");
+        recreate.setData("back");
+        Rename rename = new Rename();
+        rename.setPath("/pipe/old");
+        rename.setDestination("/pipe/renamed");
+        changes.addAll(List.of(deleteChild, deleteParent, recreate, rename));
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("pipe-1");
+        changeSet.setChanges(changes);
+
+        pipelined.executePipelined(changeSet);
+
+        assertThat(client.getChildren().forPath("/pipe/nodes")).hasSize(100);
+        assertThat(new String(client.getData().forPath("/pipe/nodes/node-50"), StandardCharsets.UTF_8)).isEqualTo("updated-50");
+        assertThat(new String(client.getData().forPath("/pipe/nodes/node-51"), StandardCharsets.UTF_8)).isEqualTo("v51");
+        assertThat(client.checkExists().forPath("/pipe/old")).isNull();
+        assertThat(new String(client.getData().forPath("/pipe/renamed/again"), StandardCharsets.UTF_8)).isEqualTo("back");
+    }
+
+    @Test
+    void testExecutePipelinedUpsertsRetryWhenAnotherWriterCreatesTheNode() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxInFlightWrites(32);
+        client.create().forPath("/race");
+        List<ChangeSet> changeSets = new java.util.ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            List<Change> changes = new java.util.ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                Upsert upsert = new Upsert();
+                upsert.setPath("/race/node-" + i);
+                upsert.setData("v" + i);
+                changes.add(upsert);
+            }
+            ChangeSet changeSet = new ChangeSet();
+            changeSet.setId("race-" + writer);
+            changeSet.setChanges(changes);
+            changeSets.add(changeSet);
+        }
+
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            List<java.util.concurrent.Future<?>> runs = new java.util.ArrayList<>();
+            for (ChangeSet changeSet : changeSets) {
+                MigrationExecutor pipelined = new MigrationExecutor(client, options);
+                runs.add(pool.submit(() -> {
+                    pipelined.executePipelined(changeSet);
+                    return null;
+                }));
+            }
+            for (java.util.concurrent.Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(client.getChildren().forPath("/race")).hasSize(300);
+        assertThat(new String(client.getData().forPath("/race/node-7"), StandardCharsets.UTF_8)).isEqualTo("v7");
+    }
+
+    @Test
+    void testExecutePipelinedReportsCompletedChanges() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setMaxInFlightWrites(2);
+        MigrationExecutor pipelined = new MigrationExecutor(client, options);
+
+        List<Change> changes = new java.util.ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Create create = new Create();
+            create.setPath("/report/node-" + i);
+            changes.add(create);
+        }
+        Update missing = new Update();
+        missing.setPath("/report/missing");
+        missing.setData("x");
+        changes.set(4, missing);
+
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("pipe-2");
+        changeSet.setChanges(changes);
+
+        assertThatThrownBy(() -> pipelined.executePipelined(changeSet))
+                .isInstanceOfSatisfying(PipelineExecutionException.class, e -> {
+                    assertThat(e.getFailedChange()).isEqualTo(4);
+                    assertThat(e.getCause()).isInstanceOf(org.apache.zookeeper.KeeperException.NoNodeException.class);
+                    assertThat(e.getCompletedChanges()).contains(0, 1, 2, 3).doesNotContain(4);
+                    for (int i = 0; i < 10; i++) {
+                        if (i == 4) {
+                            continue;
+                        }
+                        try {
+                            boolean exists = client.checkExists().forPath("/report/node-" + i) != null;
+                            assertThat(exists).isEqualTo(e.getCompletedChanges().contains(i));
+                        } catch (Exception ex) {
+                            throw new AssertionError(ex);
+                        }
+                    }
+                });
+    }
 }
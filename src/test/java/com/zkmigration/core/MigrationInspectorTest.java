@@ -1,6 +1,7 @@
 package com.zkmigration.core;
 
 import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Copy;
 import com.zkmigration.model.Create;
 import com.zkmigration.model.Delete;
 import com.zkmigration.model.Rename;
@@ -80,6 +81,12 @@ public class MigrationInspectorTest {
         assertThat(report).doesNotContain("WARNING");
         // Updated to use word diff format for modifications
         assertThat(report).contains("* [-olddata-] {+newdata+}");
+
+        // Expected version no longer matches
+        update.setExpectedVersion(0);
+        client.setData().forPath("/existing/path", "olddata".getBytes());
+        report = inspector.inspect(cs, false);
+        assertThat(report).contains("WARNING: Expected version 0 but node is at version 1");
     }
 
     @Test
@@ -104,6 +111,22 @@ public class MigrationInspectorTest {
         assertThat(report).contains("- content");
     }
 
+    @Test
+    public void testInspectRecursiveDelete() throws Exception {
+        ChangeSet cs = new ChangeSet();
+        cs.setId("3b");
+        cs.setAuthor("test");
+        Delete delete = new Delete();
+        delete.setPath("/tree");
+        delete.setRecursive(true);
+        cs.setChanges(Collections.singletonList(delete));
+
+        assertThat(inspector.inspect(cs, false)).contains("DELETE TREE /tree").contains("WARNING: Node does not exist!");
+
+        client.create().creatingParentsIfNeeded().forPath("/tree/a/b", "12345".getBytes());
+        assertThat(inspector.inspect(cs, false)).contains("Would remove 3 nodes (5 bytes)");
+    }
+
     @Test
     public void testInspectRename() throws Exception {
         ChangeSet cs = new ChangeSet();
@@ -126,6 +149,21 @@ public class MigrationInspectorTest {
         assertThat(report).contains("WARNING: Destination node already exists!");
     }
 
+    @Test
+    public void testInspectCopy() throws Exception {
+        ChangeSet cs = new ChangeSet();
+        cs.setId("4b");
+        cs.setAuthor("test");
+        Copy copy = new Copy();
+        copy.setPath("/src");
+        copy.setDestination("/dest");
+        cs.setChanges(Collections.singletonList(copy));
+
+        String report = inspector.inspect(cs, false);
+        assertThat(report).contains("COPY /src -> /dest");
+        assertThat(report).contains("WARNING: Source node does not exist!");
+    }
+
     @Test
     public void testInspectUpsert() throws Exception {
         ChangeSet cs = new ChangeSet();
@@ -1,8 +1,11 @@
 package com.zkmigration.core;
 
+import com.zkmigration.model.Change;
 import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeLogEntry;
 import com.zkmigration.model.ChangeSet;
 import com.zkmigration.model.Create;
+import com.zkmigration.model.Update;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryOneTime;
@@ -11,6 +14,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -176,4 +180,222 @@ class MigrationServiceFeaturesTest {
                 .isInstanceOf(DuplicateChangeSetIdException.class)
                 .hasMessageContaining("Duplicate ChangeSet ID detected");
     }
+
+    @Test
+    void testTransactionalExecutionMode() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setExecutionMode(ExecutionMode.TRANSACTIONAL);
+        MigrationService transactional = new MigrationService(client, "/zookeeper-migrations", options);
+
+        ChangeSet first = createChangeSet("tx1", "test", "app");
+        ChangeSet broken = createChangeSet("tx2", "test", "app");
+        Create duplicate = new Create();
+        duplicate.setPath("/test/tx1");
+        broken.setChanges(List.of(broken.getChanges().get(0), duplicate));
+
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(List.of(first, broken));
+
+        assertThatThrownBy(() -> transactional.update(log, "test", List.of("app")))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.NodeExistsException.class);
+
+        // The first changeset is committed, the second left no trace
+        assertThat(client.checkExists().forPath("/test/tx1")).isNotNull();
+        assertThat(client.checkExists().forPath("/test/tx2")).isNull();
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog").getExecutedChangeSetIds()).containsExactly("tx1");
+    }
+
+    @Test
+    void testGroupCommitRecordsAppliedChangeSetsOnFailure() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setGroupCommitSize(3);
+        options.setGroupCommitIntervalMillis(60_000);
+        MigrationService grouped = new MigrationService(client, "/zookeeper-migrations", options);
+
+        List<ChangeLogEntry> changeSets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            changeSets.add(createChangeSet("gc" + i, "test", "app"));
+        }
+        ChangeSet broken = createChangeSet("gc-broken", "test", "app");
+        Create duplicate = new Create();
+        duplicate.setPath("/test/gc0");
+        broken.setChanges(List.of(duplicate));
+        changeSets.add(broken);
+
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(changeSets);
+
+        assertThatThrownBy(() -> grouped.update(log, "test", List.of("app")))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.NodeExistsException.class);
+
+        // gc0-gc2 were flushed as a group, gc3 and gc4 by the failure path
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog").getExecutedChangeSetIds())
+                .containsExactlyInAnyOrder("gc0", "gc1", "gc2", "gc3", "gc4");
+
+        log.setZookeeperChangeLog(changeSets.subList(0, 5));
+        grouped.update(log, "test", List.of("app"));
+    }
+
+    @Test
+    void testGroupCommitRecordsAppliedChangeSetsOnDuplicateId() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setGroupCommitSize(10);
+        options.setGroupCommitIntervalMillis(60_000);
+        MigrationService grouped = new MigrationService(client, "/zookeeper-migrations", options);
+
+        ChangeSet first = createChangeSet("a", "test", "app");
+        ChangeSet dup = createChangeSet("dup", "test", "app");
+        ChangeSet dupAgain = createChangeSet("dup", "test", "app");
+        dupAgain.getChanges().get(0).setPath("/test/dup-again");
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(List.of(first, dup, dupAgain));
+
+        assertThatThrownBy(() -> grouped.update(log, "test", List.of("app")))
+                .isInstanceOf(DuplicateChangeSetIdException.class);
+
+        // The changesets applied before the duplicate are recorded, so a fixed changelog runs cleanly
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog").getExecutedChangeSetIds())
+                .containsExactlyInAnyOrder("a", "dup");
+        log.setZookeeperChangeLog(List.of(first, dup));
+        grouped.update(log, "test", List.of("app"));
+    }
+
+    @Test
+    void testFailedChangeSetResumesAtFirstIncompleteChange() throws Exception {
+        assertResumesAtFirstIncompleteChange(1);
+    }
+
+    @Test
+    void testFailedChangeSetResumesAtFirstIncompleteChangeBetweenCheckpoints() throws Exception {
+        // The failure itself checkpoints the changes completed since the last interval
+        assertResumesAtFirstIncompleteChange(10);
+    }
+
+    private void assertResumesAtFirstIncompleteChange(int checkpointInterval) throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setCheckpointInterval(checkpointInterval);
+        MigrationService resumable = new MigrationService(client, "/zookeeper-migrations", options);
+
+        ChangeSet cs = createChangeSet("resume1", "test", "app");
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Create create = new Create();
+            create.setPath("/resume/node-" + i);
+            create.setData("v" + i);
+            changes.add(create);
+        }
+        Update missing = new Update();
+        missing.setPath("/resume/missing");
+        missing.setData("updated");
+        changes.add(missing);
+        Create last = new Create();
+        last.setPath("/resume/last");
+        changes.add(last);
+        cs.setChanges(changes);
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(List.of(cs));
+
+        assertThatThrownBy(() -> resumable.update(log, "test", List.of("app")))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.NoNodeException.class);
+        String progressNode = "/zookeeper-migrations/progress/" + FlatHistoryStore.encodeId("resume1");
+        assertThat(new String(client.getData().forPath(progressNode))).contains("\"completed\":3");
+
+        // Without the checkpoint the creates would fail on their existing nodes
+        client.create().forPath("/resume/missing");
+        resumable.update(log, "test", List.of("app"));
+
+        assertThat(new String(client.getData().forPath("/resume/missing"))).isEqualTo("updated");
+        assertThat(client.checkExists().forPath("/resume/last")).isNotNull();
+        assertThat(client.checkExists().forPath(progressNode)).isNull();
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog").getExecutedChangeSetIds()).contains("resume1");
+        assertThat(resumable.getWriteStats().written()).isEqualTo(2);
+    }
+
+    @Test
+    void testCheckpointOfModifiedChangesIsIgnored() throws Exception {
+        ChangeSet cs = createChangeSet("resume2", "test", "app");
+        ChangeSetProgress progress = new ChangeSetProgress(client, "/zookeeper-migrations/progress", "resume2", 1);
+        progress.completed(cs.getChanges().get(0));
+
+        assertThat(new ChangeSetProgress(client, "/zookeeper-migrations/progress", "resume2", 1).resume(cs.getChanges())).isEqualTo(1);
+        ((Create) cs.getChanges().get(0)).setData("edited");
+        assertThat(new ChangeSetProgress(client, "/zookeeper-migrations/progress", "resume2", 1).resume(cs.getChanges())).isZero();
+    }
+
+    @Test
+    void testGroupCommitWithSnapshotLayout() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(HistoryLayout.SNAPSHOT);
+        options.setSnapshotCompactionInterval(4);
+        options.setGroupCommitSize(5);
+        MigrationService grouped = new MigrationService(client, "/zookeeper-migrations", options);
+
+        List<ChangeLogEntry> changeSets = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            changeSets.add(createChangeSet("snap" + i, "test", "app"));
+        }
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(changeSets);
+
+        grouped.update(log, "test", List.of("app"));
+
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog", options).getExecutedChangeSetIds()).hasSize(12);
+    }
+
+    @Test
+    void testParallelChangeSets() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setChangeSetParallelism(4);
+        options.setGroupCommitSize(3);
+        MigrationService parallel = new MigrationService(client, "/zookeeper-migrations", options);
+
+        List<ChangeLogEntry> changeSets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ChangeSet cs = createChangeSet("par" + i, "test", "app");
+            cs.getChanges().get(0).setPath("/service" + (i % 4) + "/node" + i);
+            changeSets.add(cs);
+        }
+        // Depends on /service0/node0, which an earlier changeset creates
+        ChangeSet update = createChangeSet("par-update", "test", "app");
+        Update change = new Update();
+        change.setPath("/service0/node0");
+        change.setData("v2");
+        update.setChanges(List.of(change));
+        changeSets.add(update);
+
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(changeSets);
+        parallel.update(log, "test", List.of("app"));
+
+        assertThat(new String(client.getData().forPath("/service0/node0"))).isEqualTo("v2");
+        assertThat(client.getChildren().forPath("/service3")).hasSize(5);
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog").getExecutedChangeSetIds()).hasSize(21);
+
+        // A second run finds everything recorded
+        parallel.update(log, "test", List.of("app"));
+    }
+
+    @Test
+    void testVirtualThreadsWithPipelinedParallelRun() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setThreadingMode(ThreadingMode.VIRTUAL);
+        options.setExecutionMode(ExecutionMode.PIPELINED);
+        options.setChangeSetParallelism(4);
+        MigrationService virtual = new MigrationService(client, "/zookeeper-migrations", options);
+
+        List<ChangeLogEntry> changeSets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ChangeSet cs = createChangeSet("virt" + i, "test", "app");
+            cs.getChanges().get(0).setPath("/virtual" + (i % 2) + "/node" + i);
+            changeSets.add(cs);
+        }
+        ChangeLog log = new ChangeLog();
+        log.setZookeeperChangeLog(changeSets);
+
+        assertThat(virtual.previewUpdate(log, "test", List.of("app"))).isTrue();
+        virtual.update(log, "test", List.of("app"));
+
+        assertThat(client.getChildren().forPath("/virtual0")).hasSize(4);
+        assertThat(new MigrationStateService(client, "/zookeeper-migrations/changelog", options).getExecutedChangeSetIds()).hasSize(8);
+    }
 }
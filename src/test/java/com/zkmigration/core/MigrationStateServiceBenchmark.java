@@ -0,0 +1,104 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares sequential and pipelined history loading. Run with
+ * {@code mvn test -Dbenchmark=true -Dtest=MigrationStateServiceBenchmark}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MigrationStateServiceBenchmark {
+
+    private static TestingServer server;
+    private static CuratorFramework client;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        // 100k history children do not fit in the default 1 MB getChildren response
+        System.setProperty("jute.maxbuffer", String.valueOf(16 * 1024 * 1024));
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void benchmark1k() throws Exception {
+        benchmarkHistoryLoad(1_000);
+    }
+
+    @Test
+    void benchmark10k() throws Exception {
+        benchmarkHistoryLoad(10_000);
+    }
+
+    @Test
+    void benchmark100k() throws Exception {
+        benchmarkHistoryLoad(100_000);
+    }
+
+    private void benchmarkHistoryLoad(int size) throws Exception {
+        String historyPath = "/bench-" + size + "/changelog";
+        MigrationStateService service = new MigrationStateService(client, historyPath);
+        seedHistory(service, historyPath, size);
+
+        long start = System.nanoTime();
+        int sequential = loadSequentially(historyPath);
+        long sequentialMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        int pipelined = service.getExecutedChangeSets().size();
+        long pipelinedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("history=%d sequential=%dms pipelined=%dms%n", size, sequentialMs, pipelinedMs);
+        assertThat(sequential).isEqualTo(size);
+        assertThat(pipelined).isEqualTo(size);
+    }
+
+    private int loadSequentially(String historyPath) throws Exception {
+        int count = 0;
+        for (String child : client.getChildren().forPath(historyPath)) {
+            client.getData().forPath(historyPath + "/" + child);
+            count++;
+        }
+        return count;
+    }
+
+    private void seedHistory(MigrationStateService service, String historyPath, int size) throws Exception {
+        service.ensureHistoryPathExists();
+        List<CuratorOp> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String id = "changeset-" + i;
+            String child = Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+            byte[] data = ("{\"id\":\"" + id + "\",\"author\":\"bench\",\"executedAt\":0,\"checksum\":\"0\"}").getBytes(StandardCharsets.UTF_8);
+            batch.add(client.transactionOp().create().forPath(historyPath + "/" + child, data));
+            if (batch.size() == 1000) {
+                client.transaction().forOperations(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            client.transaction().forOperations(batch);
+        }
+    }
+}
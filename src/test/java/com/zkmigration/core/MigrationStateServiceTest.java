@@ -7,10 +7,17 @@ import org.apache.curator.test.TestingServer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class MigrationStateServiceTest {
 
@@ -81,4 +88,151 @@ class MigrationStateServiceTest {
         service.removeChangeSetExecution("non-existent");
         // Should not throw exception
     }
+
+    @Test
+    void testGetExecutedChangeSetsPipelined() throws Exception {
+        MigrationStateService narrowWindow = new MigrationStateService(client, HISTORY_PATH, 3);
+        for (int i = 0; i < 20; i++) {
+            narrowWindow.markChangeSetExecuted("cs-" + i, "user", "desc", "sum-" + i);
+        }
+
+        Map<String, MigrationStateService.ExecutedChangeSet> executed = narrowWindow.getExecutedChangeSets();
+
+        assertThat(executed).hasSize(20);
+        assertThat(executed.get("cs-7").checksum).isEqualTo("sum-7");
+        assertThat(executed.get("cs-7").author).isEqualTo("user");
+    }
+
+    @Test
+    void testHistoryCacheSkipsReadsWhileUnchanged(@TempDir Path cacheDir) throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryCacheDirectory(cacheDir);
+        MigrationStateService cached = new MigrationStateService(client, HISTORY_PATH, options);
+        cached.markChangeSetExecuted("a", "user", "desc", "sum-a");
+
+        assertThat(cached.getExecutedChangeSets().get("a").checksum).isEqualTo("sum-a");
+
+        // Rewriting a record behind the service's back does not touch the history node, so the cache is served
+        String nodePath = HISTORY_PATH + "/" + FlatHistoryStore.encodeId("a");
+        client.setData().forPath(nodePath, "{\"id\":\"a\",\"checksum\":\"tampered\"}".getBytes(StandardCharsets.UTF_8));
+        assertThat(cached.getExecutedChangeSets().get("a").checksum).isEqualTo("sum-a");
+
+        // Another runner sharing the cache directory writes: the history version moves and the cache is reloaded
+        MigrationStateService otherRunner = new MigrationStateService(client, HISTORY_PATH, options);
+        otherRunner.markChangeSetExecuted("a", "user", "desc", "sum-a2");
+        assertThat(cached.getExecutedChangeSets().get("a").checksum).isEqualTo("sum-a2");
+
+        otherRunner.markChangeSetExecuted("b", "user", "desc");
+        assertThat(cached.getExecutedChangeSetIds()).containsExactlyInAnyOrder("a", "b");
+
+        otherRunner.removeChangeSetExecution("a");
+        assertThat(cached.getExecutedChangeSetIds()).containsExactly("b");
+    }
+
+    @Test
+    void testHistoryCacheWithSnapshotLayout(@TempDir Path cacheDir) throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(HistoryLayout.SNAPSHOT);
+        options.setHistoryCacheDirectory(cacheDir);
+        MigrationStateService cached = new MigrationStateService(client, HISTORY_PATH, options);
+
+        cached.markChangeSetExecuted("a", "user", "desc");
+        assertThat(cached.getExecutedChangeSetIds()).containsExactly("a");
+        cached.markChangeSetExecuted("b", "user", "desc");
+        assertThat(cached.getExecutedChangeSetIds()).containsExactlyInAnyOrder("a", "b");
+        cached.removeChangeSetExecution("a");
+        assertThat(cached.getExecutedChangeSetIds()).containsExactly("b");
+    }
+
+    @Test
+    void testCorruptHistoryCacheIsIgnored(@TempDir Path cacheDir) throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryCacheDirectory(cacheDir);
+        MigrationStateService cached = new MigrationStateService(client, HISTORY_PATH, options);
+        cached.markChangeSetExecuted("a", "user", "desc");
+        cached.getExecutedChangeSets();
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : files.toList()) {
+                Files.writeString(file, "not json");
+            }
+        }
+
+        assertThat(cached.getExecutedChangeSetIds()).containsExactly("a");
+    }
+
+    @Test
+    void testLookupSpecificIds() throws Exception {
+        service.markChangeSetExecuted("a", "user", "desc", "sum-a");
+        service.markChangeSetExecuted("b", "user", "desc", "sum-b");
+
+        Map<String, MigrationStateService.ExecutedChangeSet> found = service.getExecutedChangeSets(List.of("b", "missing"));
+
+        assertThat(found).containsOnlyKeys("b");
+        assertThat(found.get("b").checksum).isEqualTo("sum-b");
+        assertThatThrownBy(() -> service.convertTo(HistoryLayout.FLAT)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testGetExecutedChangeSetsForChoosesTargetedLookup() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            service.markChangeSetExecuted("cs-" + i, "user", "desc");
+        }
+
+        // 2 ids against 10 entries: only the requested ids are read
+        assertThat(service.getExecutedChangeSetsFor(List.of("cs-1", "new"))).containsOnlyKeys("cs-1");
+
+        // 8 ids against 10 entries: the whole history is loaded
+        List<String> many = List.of("cs-0", "cs-1", "cs-2", "cs-3", "cs-4", "cs-5", "new-1", "new-2");
+        assertThat(service.getExecutedChangeSetsFor(many)).hasSize(10);
+
+        MigrationOptions fullScan = new MigrationOptions();
+        fullScan.setTargetedLookupRatio(0);
+        assertThat(new MigrationStateService(client, HISTORY_PATH, fullScan).getExecutedChangeSetsFor(List.of("cs-1"))).hasSize(10);
+    }
+
+    @Test
+    void testTargetedLookupRefusesConvertedHistory() throws Exception {
+        MigrationOptions sharded = new MigrationOptions();
+        sharded.setHistoryLayout(HistoryLayout.SHARDED);
+        MigrationStateService shardedService = new MigrationStateService(client, HISTORY_PATH, sharded);
+        for (int i = 0; i < 10; i++) {
+            shardedService.markChangeSetExecuted("cs-" + i, "user", "desc");
+        }
+
+        assertThat(shardedService.getExecutedChangeSetsFor(List.of("cs-3"))).containsKey("cs-3");
+        assertThatThrownBy(() -> service.getExecutedChangeSetsFor(List.of("cs-3"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testMixedHistoryEncodingsDecode() throws Exception {
+        MigrationOptions smileOptions = new MigrationOptions();
+        smileOptions.setHistoryEncoding(HistoryEncoding.SMILE);
+        MigrationStateService smileService = new MigrationStateService(client, HISTORY_PATH, smileOptions);
+
+        service.markChangeSetExecuted("json-entry", "user", "desc", "c1");
+        smileService.markChangeSetExecuted("smile-entry", "user", "desc", "c2");
+
+        for (MigrationStateService reader : List.of(service, smileService)) {
+            Map<String, MigrationStateService.ExecutedChangeSet> history = reader.getExecutedChangeSets();
+            assertThat(history).containsOnlyKeys("json-entry", "smile-entry");
+            assertThat(history.get("smile-entry").checksum).isEqualTo("c2");
+        }
+    }
+
+    @Test
+    void testSmileEncodingWithSnapshotLayout() throws Exception {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(HistoryLayout.SNAPSHOT);
+        options.setHistoryEncoding(HistoryEncoding.SMILE);
+        options.setSnapshotCompactionInterval(2);
+        MigrationStateService smileService = new MigrationStateService(client, HISTORY_PATH, options);
+
+        for (int i = 0; i < 5; i++) {
+            smileService.markChangeSetExecuted("cs-" + i, "user", "desc");
+        }
+
+        options.setHistoryEncoding(HistoryEncoding.JSON);
+        assertThat(new MigrationStateService(client, HISTORY_PATH, options).getExecutedChangeSetIds()).hasSize(5);
+    }
 }
@@ -25,4 +25,10 @@ public class MigrationUtilsTest {
         byte[] data = MigrationUtils.resolveData(null, null);
         assertThat(data).isEmpty();
     }
+
+    @Test
+    public void testAncestors() {
+        assertThat(MigrationUtils.ancestors("/a/b/c")).containsExactly("/a", "/a/b");
+        assertThat(MigrationUtils.ancestors("/a")).isEmpty();
+    }
 }
@@ -0,0 +1,85 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PathCacheTest {
+
+    private TestingServer server;
+    private CuratorFramework client;
+    private PathCache paths;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+        paths = new PathCache(client);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testCreatesMissingParentsAndRemembersThem() throws Exception {
+        client.create().forPath("/config", new byte[0]);
+
+        paths.create("/config/services/a/settings", bytes("a"));
+        paths.create("/config/services/b/settings", bytes("b"));
+
+        assertThat(client.getData().forPath("/config/services")).isEmpty();
+        assertThat(new String(client.getData().forPath("/config/services/b/settings"), StandardCharsets.UTF_8)).isEqualTo("b");
+        assertThat(paths.contains("/config")).isTrue();
+        assertThat(paths.contains("/config/services/a")).isTrue();
+        assertThat(paths.contains("/config/services/b/settings")).isTrue();
+    }
+
+    @Test
+    void testRemovedForgetsTheSubtreeOnly() throws Exception {
+        paths.create("/a/b/c", bytes("c"));
+        paths.create("/a/bb", bytes("bb"));
+
+        paths.removed("/a/b");
+
+        assertThat(paths.contains("/a/b")).isFalse();
+        assertThat(paths.contains("/a/b/c")).isFalse();
+        assertThat(paths.contains("/a/bb")).isTrue();
+        assertThat(paths.contains("/a")).isTrue();
+    }
+
+    @Test
+    void testRecoversFromParentsRemovedOutsideTheRun() throws Exception {
+        paths.create("/stale/parent/first", bytes("1"));
+        client.delete().deletingChildrenIfNeeded().forPath("/stale");
+
+        paths.create("/stale/parent/second", bytes("2"));
+
+        assertThat(new String(client.getData().forPath("/stale/parent/second"), StandardCharsets.UTF_8)).isEqualTo("2");
+        assertThat(paths.contains("/stale/parent")).isTrue();
+    }
+
+    @Test
+    void testExistingNodeStillFails() throws Exception {
+        paths.create("/dup", bytes("1"));
+
+        assertThatThrownBy(() -> paths.create("/dup", bytes("2")))
+                .isInstanceOf(org.apache.zookeeper.KeeperException.NodeExistsException.class);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,83 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelinedReaderTest {
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testReadDataWithSmallWindow() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String path = "/reader/node-" + i;
+            client.create().creatingParentsIfNeeded().forPath(path, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+            paths.add(path);
+        }
+
+        Map<String, byte[]> data = new PipelinedReader(client, 4).readData(paths);
+
+        assertThat(data).hasSize(50);
+        assertThat(new String(data.get("/reader/node-42"), StandardCharsets.UTF_8)).isEqualTo("value-42");
+    }
+
+    @Test
+    void testReadDataSkipsMissingNodes() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/reader/present", "x".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, byte[]> data = new PipelinedReader(client).readData(List.of("/reader/present", "/reader/missing"));
+
+        assertThat(data).containsOnlyKeys("/reader/present");
+    }
+
+    @Test
+    void testInvalidWindow() {
+        assertThatThrownBy(() -> new PipelinedReader(client, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBlockingReadsOnExecutor() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String path = "/blocking/node-" + i;
+            client.create().creatingParentsIfNeeded().forPath(path, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+            paths.add(path);
+        }
+        paths.add("/blocking/missing");
+
+        PipelinedReader reader = new PipelinedReader(client, 4, VirtualThreads.executor());
+
+        assertThat(reader.readData(paths)).hasSize(20);
+        assertThat(reader.exists(paths)).hasSize(20).doesNotContain("/blocking/missing");
+        assertThat(reader.children(List.of("/blocking", "/blocking/missing")).get("/blocking")).hasSize(20);
+    }
+}
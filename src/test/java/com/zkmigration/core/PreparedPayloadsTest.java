@@ -0,0 +1,57 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.Create;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PreparedPayloadsTest {
+
+    private static List<Change> changes(int count) {
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Create create = new Create();
+            create.setPath("/payloads/node-" + i);
+            create.setData("value-" + i);
+            create.setCompress(true);
+            changes.add(create);
+        }
+        return changes;
+    }
+
+    @Test
+    void testPreparesOnlyAFewPayloadsAhead() throws Exception {
+        List<Runnable> started = new ArrayList<>();
+        Executor recording = task -> {
+            started.add(task);
+            task.run();
+        };
+        List<Change> changes = changes(10);
+        PreparedPayloads payloads = new PreparedPayloads(changes, recording);
+        assertThat(started).hasSize(PreparedPayloads.LOOKAHEAD);
+
+        for (int i = 0; i < changes.size(); i++) {
+            byte[] payload = payloads.take((Create) changes.get(i));
+            assertThat(ValueCompression.decode(payload)).isEqualTo(("value-" + i).getBytes(StandardCharsets.UTF_8));
+            assertThat(started).hasSize(Math.min(changes.size(), i + 1 + PreparedPayloads.LOOKAHEAD));
+        }
+    }
+
+    @Test
+    void testKeptPayloadIsTakenOnce() throws Exception {
+        List<Change> changes = changes(1);
+        Create create = (Create) changes.get(0);
+        PreparedPayloads payloads = new PreparedPayloads(changes, Runnable::run);
+        byte[] kept = payloads.take(create);
+        payloads.keep(create, kept);
+
+        assertThat(payloads.take(create)).isSameAs(kept);
+        assertThat(payloads.take(create)).isNotSameAs(kept);
+    }
+}
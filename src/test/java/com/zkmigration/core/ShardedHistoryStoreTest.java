@@ -0,0 +1,101 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedHistoryStoreTest {
+
+    private static final String HISTORY_PATH = "/zookeeper-migrations/changelog";
+
+    private TestingServer server;
+    private CuratorFramework client;
+    private MigrationStateService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(HistoryLayout.SHARDED);
+        service = new MigrationStateService(client, HISTORY_PATH, options);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void testEntriesAreStoredInTheirShard() throws Exception {
+        service.markChangeSetExecuted("cs-1", "user", "desc", "sum-1");
+
+        String encoded = FlatHistoryStore.encodeId("cs-1");
+        String shard = ShardedHistoryStore.shardOf(encoded);
+        assertThat(client.checkExists().forPath(HISTORY_PATH + "/" + shard + "/" + encoded)).isNotNull();
+        assertThat(client.getChildren().forPath(HISTORY_PATH)).hasSize(ShardedHistoryStore.SHARD_COUNT);
+    }
+
+    @Test
+    void testMarkLoadLookupAndRemove() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            service.markChangeSetExecuted("cs-" + i, "user", "desc", "sum-" + i);
+        }
+        service.markChangeSetExecuted("cs-3", "user", "desc", "sum-3-rerun");
+        service.removeChangeSetExecution("cs-4");
+        service.removeChangeSetExecution("never-executed");
+
+        Map<String, MigrationStateService.ExecutedChangeSet> all = service.getExecutedChangeSets();
+        assertThat(all).hasSize(29).doesNotContainKey("cs-4");
+        assertThat(all.get("cs-3").checksum).isEqualTo("sum-3-rerun");
+        assertThat(service.getExecutedChangeSetIds()).hasSize(29);
+
+        Map<String, MigrationStateService.ExecutedChangeSet> found = service.getExecutedChangeSets(List.of("cs-1", "cs-4", "unknown"));
+        assertThat(found).containsOnlyKeys("cs-1");
+    }
+
+    @Test
+    void testConvertFlatHistory() throws Exception {
+        MigrationStateService flat = new MigrationStateService(client, HISTORY_PATH);
+        flat.markChangeSetExecuted("a", "user", "desc", "sum-a");
+        flat.markChangeSetExecuted("b", "user", "desc", "sum-b");
+
+        // Flat entries are visible before conversion
+        assertThat(service.getExecutedChangeSetIds()).containsExactlyInAnyOrder("a", "b");
+        assertThat(service.getExecutedChangeSets(List.of("a"))).containsOnlyKeys("a");
+
+        assertThat(service.convertTo(HistoryLayout.SHARDED)).isEqualTo(2);
+
+        assertThat(client.getChildren().forPath(HISTORY_PATH)).allMatch(child -> child.startsWith(ShardedHistoryStore.SHARD_PREFIX));
+        assertThat(service.getExecutedChangeSets().get("b").checksum).isEqualTo("sum-b");
+        assertThatThrownBy(flat::getExecutedChangeSetIds).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> service.convertTo(HistoryLayout.FLAT)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testConvertFlatHistoryWithMoreEntriesThanShards() throws Exception {
+        MigrationStateService flat = new MigrationStateService(client, HISTORY_PATH);
+        for (int i = 0; i < 300; i++) {
+            flat.markChangeSetExecuted("cs-" + i, "user", "desc", "sum-" + i);
+        }
+
+        assertThat(service.convertTo(HistoryLayout.SHARDED)).isEqualTo(300);
+        service.markChangeSetExecuted("cs-300", "user", "desc", "sum-300");
+
+        assertThat(client.getChildren().forPath(HISTORY_PATH)).hasSize(ShardedHistoryStore.SHARD_COUNT);
+        assertThat(service.getExecutedChangeSetIds()).hasSize(301);
+        assertThat(service.getExecutedChangeSets(List.of("cs-0", "cs-300", "unknown"))).containsOnlyKeys("cs-0", "cs-300");
+    }
+}
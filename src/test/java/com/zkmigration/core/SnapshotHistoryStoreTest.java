@@ -0,0 +1,126 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotHistoryStoreTest {
+
+    private static final String HISTORY_PATH = "/zookeeper-migrations/changelog";
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private MigrationStateService snapshotService(int compactionInterval) {
+        MigrationOptions options = new MigrationOptions();
+        options.setHistoryLayout(HistoryLayout.SNAPSHOT);
+        options.setSnapshotCompactionInterval(compactionInterval);
+        return new MigrationStateService(client, HISTORY_PATH, options);
+    }
+
+    @Test
+    void testMarkAndRemoveAcrossCompactions() throws Exception {
+        MigrationStateService service = snapshotService(3);
+
+        for (int i = 0; i < 7; i++) {
+            service.markChangeSetExecuted("cs-" + i, "user", "desc", "sum-" + i);
+        }
+        service.removeChangeSetExecution("cs-2");
+        service.markChangeSetExecuted("cs-0", "user", "desc", "sum-0-rerun");
+
+        Map<String, MigrationStateService.ExecutedChangeSet> executed = service.getExecutedChangeSets();
+        assertThat(executed).containsOnlyKeys("cs-0", "cs-1", "cs-3", "cs-4", "cs-5", "cs-6");
+        assertThat(executed.get("cs-0").checksum).isEqualTo("sum-0-rerun");
+        assertThat(service.getExecutedChangeSetIds()).hasSize(6);
+
+        // Compactions ran, so only the segments since the last one remain
+        assertThat(client.getChildren().forPath(HISTORY_PATH + "/.segments").size()).isLessThan(3);
+        assertThat(client.getChildren().forPath(HISTORY_PATH)).containsExactlyInAnyOrder(".snapshot", ".segments");
+    }
+
+    @Test
+    void testConvertFlatHistory() throws Exception {
+        MigrationStateService flat = new MigrationStateService(client, HISTORY_PATH);
+        flat.markChangeSetExecuted("a", "user", "desc", "sum-a");
+        flat.markChangeSetExecuted("b", "user", "desc", "sum-b");
+
+        MigrationStateService snapshot = snapshotService(0);
+        // Flat entries are visible before conversion
+        assertThat(snapshot.getExecutedChangeSets()).containsOnlyKeys("a", "b");
+
+        assertThat(snapshot.convertTo(HistoryLayout.SNAPSHOT)).isEqualTo(2);
+
+        assertThat(client.getChildren().forPath(HISTORY_PATH)).containsExactlyInAnyOrder(".snapshot", ".segments");
+        assertThat(snapshot.getExecutedChangeSets().get("b").checksum).isEqualTo("sum-b");
+
+        snapshot.removeChangeSetExecution("a");
+        assertThat(snapshot.getExecutedChangeSetIds()).containsExactly("b");
+
+        assertThatThrownBy(flat::getExecutedChangeSets).isInstanceOf(IllegalStateException.class);
+        MigrationStateService freshFlat = new MigrationStateService(client, HISTORY_PATH);
+        assertThatThrownBy(() -> freshFlat.markChangeSetExecuted("c", "user", "desc")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testLargeSnapshotIsChunked() throws Exception {
+        MigrationStateService flat = new MigrationStateService(client, HISTORY_PATH);
+        flat.ensureHistoryPathExists();
+        List<CuratorOp> ops = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            String id = "changeset-" + i;
+            byte[] data = ("{\"id\":\"" + id + "\",\"author\":\"user\",\"executedAt\":" + i + ",\"checksum\":\"" + UUID.randomUUID() + UUID.randomUUID() + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            ops.add(client.transactionOp().create().forPath(HISTORY_PATH + "/" + FlatHistoryStore.encodeId(id), data));
+            if (ops.size() == 500) {
+                client.transaction().forOperations(ops);
+                ops.clear();
+            }
+        }
+
+        MigrationStateService snapshot = snapshotService(0);
+        assertThat(snapshot.convertTo(HistoryLayout.SNAPSHOT)).isEqualTo(6000);
+
+        assertThat(client.getChildren().forPath(HISTORY_PATH + "/.snapshot").size()).isGreaterThan(1);
+        assertThat(snapshot.getExecutedChangeSets()).hasSize(6000);
+    }
+
+    @Test
+    void testCompactionRemovesStrayChunks() throws Exception {
+        MigrationStateService service = snapshotService(0);
+        service.markChangeSetExecuted("a", "user", "desc");
+        client.create().forPath(HISTORY_PATH + "/.snapshot/g0000000007-00000", new byte[]{1, 2, 3});
+
+        service.convertTo(HistoryLayout.SNAPSHOT);
+        service.convertTo(HistoryLayout.SNAPSHOT);
+
+        assertThat(client.getChildren().forPath(HISTORY_PATH + "/.snapshot")).containsExactly("g0000000002-00000");
+        assertThat(service.getExecutedChangeSetIds()).containsExactly("a");
+    }
+}
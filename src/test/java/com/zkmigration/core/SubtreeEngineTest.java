@@ -0,0 +1,97 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SubtreeEngineTest {
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private void seedTree(String root) throws Exception {
+        client.create().creatingParentsIfNeeded().forPath(root, "root".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 10; i++) {
+            client.create().forPath(root + "/a" + i, ("a" + i).getBytes(StandardCharsets.UTF_8));
+            for (int j = 0; j < 10; j++) {
+                client.create().forPath(root + "/a" + i + "/b" + j, ("b" + i + j).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void testCopyInSmallBatches() throws Exception {
+        seedTree("/src");
+        SubtreeEngine engine = new SubtreeEngine(client, 4, 1024);
+
+        SubtreeEngine.Stats stats = engine.copy("/src", "/backup/dst");
+
+        assertThat(stats.nodes()).isEqualTo(111);
+        assertThat(client.checkExists().forPath("/src/a3/b7")).isNotNull();
+        assertThat(new String(client.getData().forPath("/backup/dst/a3/b7"), StandardCharsets.UTF_8)).isEqualTo("b37");
+        assertThat(client.checkExists().forPath("/backup/dst").getNumChildren()).isEqualTo(10);
+    }
+
+    @Test
+    void testMoveDeletesSource() throws Exception {
+        seedTree("/src");
+        SubtreeEngine engine = new SubtreeEngine(client, 4, 1024);
+
+        SubtreeEngine.Stats stats = engine.move("/src", "/dst");
+
+        assertThat(stats.bytes()).isGreaterThan(0);
+        assertThat(client.checkExists().forPath("/src")).isNull();
+        assertThat(new String(client.getData().forPath("/dst"), StandardCharsets.UTF_8)).isEqualTo("root");
+        assertThat(client.getChildren().forPath("/dst/a9")).hasSize(10);
+    }
+
+    @Test
+    void testRejectsInvalidTransfers() throws Exception {
+        seedTree("/src");
+        client.create().forPath("/taken");
+        SubtreeEngine engine = new SubtreeEngine(client);
+
+        assertThatThrownBy(() -> engine.copy("/src", "/src/inner")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> engine.copy("/missing", "/dst")).isInstanceOf(KeeperException.NoNodeException.class);
+        assertThatThrownBy(() -> engine.move("/src", "/taken")).isInstanceOf(KeeperException.NodeExistsException.class);
+        assertThat(client.checkExists().forPath("/src").getNumChildren()).isEqualTo(10);
+    }
+
+    @Test
+    void testMeasureAndDeleteTree() throws Exception {
+        seedTree("/src");
+        SubtreeEngine engine = new SubtreeEngine(client, 4, 1024);
+
+        SubtreeEngine.Stats measured = engine.measure("/src");
+        // "root" + 10 x "aN" + 100 x "bNN"
+        assertThat(measured.nodes()).isEqualTo(111);
+        assertThat(measured.bytes()).isEqualTo(4 + 10 * 2 + 100 * 3);
+
+        SubtreeEngine.Stats deleted = engine.deleteTree("/src");
+        assertThat(deleted.nodes()).isEqualTo(111);
+        assertThat(client.checkExists().forPath("/src")).isNull();
+    }
+}
@@ -0,0 +1,126 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.ChangeLog;
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.Rename;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TenantFanOutTest {
+
+    private static final String ROOT = "/tenants/{tenant}/migrations";
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private static ChangeSet changeSet(String id, Change... changes) {
+        ChangeSet cs = new ChangeSet();
+        cs.setId(id);
+        cs.setAuthor("test");
+        cs.setEnvironments(List.of("test"));
+        cs.setLabels(List.of("app"));
+        cs.setChanges(List.of(changes));
+        return cs;
+    }
+
+    private static Create create(String path, String data) {
+        Create create = new Create();
+        create.setPath(path);
+        create.setData(data);
+        return create;
+    }
+
+    private static ChangeLog changeLog() {
+        Rename rename = new Rename();
+        rename.setPath("/tenants/{tenant}/staging");
+        rename.setDestination("/tenants/{tenant}/live");
+        ChangeLog changeLog = new ChangeLog();
+        changeLog.setZookeeperChangeLog(new ArrayList<>(List.of(
+                changeSet("tenant-1", create("/tenants/{tenant}/staging", "config"), rename),
+                changeSet("shared-1", create("/shared-{tenant}", "x")))));
+        return changeLog;
+    }
+
+    private List<FanOut.Result> run(List<String> tenants, FanOutPolicy policy) throws Exception {
+        return new TenantFanOut(client, ROOT, new MigrationOptions(), 2, policy)
+                .run(tenants, changeLog(), (service, changeLog) -> service.update(changeLog, "test", List.of("app")));
+    }
+
+    @Test
+    void testEveryTenantGetsItsOwnPathsAndHistory() throws Exception {
+        List<FanOut.Result> results = run(List.of("a", "b", "c"), FanOutPolicy.BEST_EFFORT);
+
+        assertThat(results).extracting(FanOut.Result::target).containsExactly("a", "b", "c");
+        assertThat(results).allSatisfy(result -> {
+            assertThat(result.status()).isEqualTo(FanOut.Status.SUCCEEDED);
+            assertThat(result.writes().written()).isEqualTo(3);
+        });
+        String checksum = null;
+        for (String tenant : List.of("a", "b", "c")) {
+            assertThat(client.getData().forPath("/tenants/" + tenant + "/live")).isEqualTo("config".getBytes(StandardCharsets.UTF_8));
+            assertThat(client.checkExists().forPath("/tenants/" + tenant + "/staging")).isNull();
+            assertThat(client.checkExists().forPath("/shared-" + tenant)).isNotNull();
+            Map<String, MigrationStateService.ExecutedChangeSet> history =
+                    new MigrationStateService(client, "/tenants/" + tenant + "/migrations/changelog").getExecutedChangeSets();
+            assertThat(history).containsOnlyKeys("tenant-1", "shared-1");
+            if (checksum == null) {
+                checksum = history.get("tenant-1").checksum;
+            }
+            // Checksums are those of the template, so the same changelog verifies against every tenant
+            assertThat(history.get("tenant-1").checksum).isEqualTo(checksum);
+        }
+        assertThat(checksum).isEqualTo(ChecksumUtil.calculateChecksum((ChangeSet) changeLog().getZookeeperChangeLog().get(0)));
+
+        // A second run finds every tenant up to date
+        assertThat(run(List.of("a", "b", "c"), FanOutPolicy.BEST_EFFORT))
+                .allSatisfy(result -> assertThat(result.writes().written()).isZero());
+    }
+
+    @Test
+    void testFailedTenantIsReportedAndOthersComplete() throws Exception {
+        client.create().creatingParentsIfNeeded().forPath("/tenants/b/staging");
+
+        List<FanOut.Result> results = run(List.of("a", "b"), FanOutPolicy.BEST_EFFORT);
+
+        assertThat(results.get(0).status()).isEqualTo(FanOut.Status.SUCCEEDED);
+        assertThat(results.get(1).status()).isEqualTo(FanOut.Status.FAILED);
+        assertThat(results.get(1).error()).isInstanceOf(org.apache.zookeeper.KeeperException.NodeExistsException.class);
+        assertThat(client.checkExists().forPath("/tenants/a/live")).isNotNull();
+    }
+
+    @Test
+    void testRejectsInvalidTenantsAndRoots() {
+        assertThatThrownBy(() -> new TenantFanOut(client, "/migrations", new MigrationOptions(), 1, FanOutPolicy.FAIL_FAST))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> run(List.of("a", "x/y"), FanOutPolicy.FAIL_FAST)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> run(List.of("a", "a"), FanOutPolicy.FAIL_FAST)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,93 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.Change;
+import com.zkmigration.model.Create;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares pipelined writes on a small platform pool with writes on virtual
+ * threads. On Java 17 the virtual run measures the fallback pool. Run with
+ * {@code mvn test -Dbenchmark=true -Dtest=ThreadingBenchmark}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ThreadingBenchmark {
+    private static final int PLATFORM_THREADS = 16;
+    private static final int IN_FLIGHT = 512;
+
+    private static TestingServer server;
+    private static CuratorFramework client;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        // 100k children do not fit in the default 1 MB getChildren response
+        System.setProperty("jute.maxbuffer", String.valueOf(16 * 1024 * 1024));
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void benchmark1k() throws Exception {
+        benchmarkWrites(1_000);
+    }
+
+    @Test
+    void benchmark10k() throws Exception {
+        benchmarkWrites(10_000);
+    }
+
+    @Test
+    void benchmark100k() throws Exception {
+        benchmarkWrites(100_000);
+    }
+
+    private void benchmarkWrites(int operations) throws Exception {
+        ExecutorService platform = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        try {
+            long platformMs = timeWrites("/platform-" + operations, operations, platform);
+            long virtualMs = timeWrites("/virtual-" + operations, operations, VirtualThreads.executor());
+            System.out.printf("operations=%d platform(%d threads)=%dms %s=%dms%n", operations, PLATFORM_THREADS, platformMs,
+                    VirtualThreads.isAvailable() ? "virtual" : "fallback(" + VirtualThreads.FALLBACK_POOL_SIZE + " threads)", virtualMs);
+        } finally {
+            platform.shutdown();
+        }
+    }
+
+    private long timeWrites(String root, int operations, ExecutorService executor) throws Exception {
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            Create create = new Create();
+            create.setPath(root + "/node-" + i);
+            create.setData("value-" + i);
+            changes.add(create);
+        }
+        client.create().forPath(root);
+
+        long start = System.nanoTime();
+        new PipelinedChangeExecutor(client, IN_FLIGHT, executor).execute(root, changes);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(client.checkExists().forPath(root).getNumChildren()).isEqualTo(operations);
+        return elapsedMs;
+    }
+}
@@ -0,0 +1,134 @@
+package com.zkmigration.core;
+
+import com.zkmigration.model.ChangeSet;
+import com.zkmigration.model.Import;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TreeImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private String read(String path) throws Exception {
+        return new String(client.getData().forPath(path), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testImportsDirectoryAndSkipsUnchangedNodes() throws Exception {
+        Path dir = tempDir.resolve("tree");
+        Files.createDirectories(dir.resolve("services/api"));
+        Files.writeString(dir.resolve("services/api/port"), "8080");
+        Files.writeString(dir.resolve("services/api/host"), "api.local");
+        Files.writeString(dir.resolve("version"), "1");
+
+        TreeImporter importer = new TreeImporter(client);
+        TreeImporter.Stats first = importer.importTree(TreeImporter.expand("/config/app", dir.toString(), null));
+
+        assertThat(first.nodes()).isEqualTo(6);
+        assertThat(first.created()).isEqualTo(6);
+        assertThat(read("/config/app/services/api/port")).isEqualTo("8080");
+        assertThat(read("/config/app/version")).isEqualTo("1");
+        assertThat(client.getData().forPath("/config/app/services")).isEmpty();
+
+        Files.writeString(dir.resolve("version"), "2");
+        TreeImporter.Stats second = importer.importTree(TreeImporter.expand("/config/app", dir.toString(), null));
+
+        assertThat(second.created()).isZero();
+        assertThat(second.updated()).isEqualTo(1);
+        assertThat(second.unchanged()).isEqualTo(5);
+        assertThat(read("/config/app/version")).isEqualTo("2");
+        assertThat(client.checkExists().forPath("/config/app/services/api/port").getVersion()).isZero();
+    }
+
+    @Test
+    void testImportsDocument() throws Exception {
+        Path document = tempDir.resolve("config.yaml");
+        Files.writeString(document, """
+                database:
+                  host: db.local
+                  port: 5432
+                  replicas: [a, b]
+                feature: null
+                """);
+
+        List<TreeImporter.Entry> entries = TreeImporter.expand("/doc", null, document.toString());
+        TreeImporter.Stats plan = new TreeImporter(client).plan(entries);
+        assertThat(plan.created()).isEqualTo(6);
+        assertThat(client.checkExists().forPath("/doc")).isNull();
+
+        new TreeImporter(client).importTree(entries);
+
+        assertThat(read("/doc/database/host")).isEqualTo("db.local");
+        assertThat(read("/doc/database/port")).isEqualTo("5432");
+        assertThat(read("/doc/database/replicas")).isEqualTo("[\"a\",\"b\"]");
+        assertThat(read("/doc/feature")).isEmpty();
+    }
+
+    @Test
+    void testRejectsAmbiguousOrInvalidSources() throws Exception {
+        Path document = tempDir.resolve("bad.json");
+        Files.writeString(document, "{\"a/b\": 1}");
+
+        assertThatThrownBy(() -> TreeImporter.expand("/x", null, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TreeImporter.expand("/x", tempDir.toString(), document.toString())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TreeImporter.expand("/x", null, document.toString())).hasMessageContaining("a/b");
+    }
+
+    @Test
+    void testChecksumFollowsImportedContent() throws Exception {
+        Path dir = tempDir.resolve("checksummed");
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve("value"), "one");
+
+        ChangeSet changeSet = importChangeSet(dir);
+        String before = ChecksumUtil.calculateChecksum(changeSet);
+        assertThat(ChecksumUtil.calculateChecksum(changeSet)).isEqualTo(before);
+
+        Files.writeString(dir.resolve("value"), "two");
+        // The source is hashed once per import, so only a changelog read afterwards sees the edit
+        assertThat(ChecksumUtil.calculateChecksum(changeSet)).isEqualTo(before);
+        assertThat(ChecksumUtil.calculateChecksum(importChangeSet(dir))).isNotEqualTo(before);
+    }
+
+    private static ChangeSet importChangeSet(Path dir) {
+        Import anImport = new Import();
+        anImport.setPath("/checksummed");
+        anImport.setDirectory(dir.toString());
+        ChangeSet changeSet = new ChangeSet();
+        changeSet.setId("import-1");
+        changeSet.setAuthor("me");
+        changeSet.setChanges(List.of(anImport));
+        return changeSet;
+    }
+}
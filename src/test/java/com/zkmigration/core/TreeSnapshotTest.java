@@ -0,0 +1,195 @@
+package com.zkmigration.core;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TreeSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TestingServer server;
+    private CuratorFramework client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1));
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private void seedTree(String root) throws Exception {
+        client.create().creatingParentsIfNeeded().forPath(root, "root".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 20; i++) {
+            client.create().forPath(root + "/a" + i, ("a" + i).getBytes(StandardCharsets.UTF_8));
+            for (int j = 0; j < 60; j++) {
+                client.create().forPath(root + "/a" + i + "/b" + j, ("value-" + i + "-" + j).repeat(10).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        client.setData().forPath(root + "/a3", "changed".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<TreeSnapshotReader.Node> readAll(Path file) throws IOException {
+        List<TreeSnapshotReader.Node> nodes = new ArrayList<>();
+        try (TreeSnapshotReader reader = new TreeSnapshotReader(file)) {
+            TreeSnapshotReader.Node node;
+            while ((node = reader.next()) != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    @Test
+    void testExportRoundTripsParentsFirst() throws Exception {
+        seedTree("/export/src");
+        Path file = tempDir.resolve("tree.snap");
+
+        TreeSnapshotExporter.Stats stats = new TreeSnapshotExporter(client).export("/export/src", file, false);
+        assertThat(stats.nodes()).isEqualTo(1 + 20 + 20 * 60);
+
+        List<TreeSnapshotReader.Node> nodes = readAll(file);
+        assertThat(nodes).hasSize(1 + 20 + 20 * 60);
+        assertThat(nodes.get(0).path()).isEqualTo("/export/src");
+
+        Set<String> seen = new HashSet<>();
+        for (TreeSnapshotReader.Node node : nodes) {
+            String parent = node.path().substring(0, node.path().lastIndexOf('/'));
+            if (!node.path().equals("/export/src")) {
+                assertThat(seen).contains(parent);
+            }
+            seen.add(node.path());
+            assertThat(node.data()).isEqualTo(client.getData().forPath(node.path()));
+        }
+        TreeSnapshotReader.Node changed = nodes.stream().filter(n -> n.path().equals("/export/src/a3")).findFirst().orElseThrow();
+        assertThat(changed.stat().getVersion()).isEqualTo(1);
+        assertThat(changed.stat().getNumChildren()).isEqualTo(60);
+    }
+
+    @Test
+    void testCompressedSnapshotIsSmallerAndReadsTheSame() throws Exception {
+        seedTree("/export/zip");
+        Path plain = tempDir.resolve("plain.snap");
+        Path compressed = tempDir.resolve("compressed.snap");
+
+        new TreeSnapshotExporter(client).export("/export/zip", plain, false);
+        new TreeSnapshotExporter(client).export("/export/zip", compressed, true);
+
+        assertThat(Files.size(compressed)).isLessThan(Files.size(plain));
+        try (TreeSnapshotReader reader = new TreeSnapshotReader(compressed)) {
+            assertThat(reader.isCompressed()).isTrue();
+            assertThat(reader.getRoot()).isEqualTo("/export/zip");
+        }
+        List<TreeSnapshotReader.Node> expected = readAll(plain);
+        List<TreeSnapshotReader.Node> actual = readAll(compressed);
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).path()).isEqualTo(expected.get(i).path());
+            assertThat(actual.get(i).data()).isEqualTo(expected.get(i).data());
+        }
+    }
+
+    @Test
+    void testRestoreChainsChunksOfASubtreeThatComeBackLater() throws Exception {
+        // The last child of a0 fills a whole chunk before it; its own child only comes after a1
+        Path file = tempDir.resolve("interleaved.snap");
+        int children = TreeSnapshotRestorer.CHUNK_SIZE - 1;
+        try (TreeSnapshotWriter writer = new TreeSnapshotWriter(file, "/interleaved", false)) {
+            writer.write("/interleaved", new byte[0], new Stat());
+            writer.write("/interleaved/a0", new byte[0], new Stat());
+            for (int i = 0; i < children; i++) {
+                writer.write("/interleaved/a0/b" + i, ("b" + i).getBytes(StandardCharsets.UTF_8), new Stat());
+            }
+            writer.write("/interleaved/a1", new byte[0], new Stat());
+            writer.write("/interleaved/a0/b" + (children - 1) + "/c", new byte[0], new Stat());
+        }
+
+        TreeSnapshotRestorer.Stats stats = new TreeSnapshotRestorer(client).restore(file, "/interleaved", RestoreMode.MERGE, 4);
+
+        assertThat(stats.created()).isEqualTo(1 + 1 + children + 1 + 1);
+        assertThat(client.checkExists().forPath("/interleaved/a0/b" + (children - 1) + "/c")).isNotNull();
+    }
+
+    @Test
+    void testRestoreMergesIntoAnotherRoot() throws Exception {
+        seedTree("/restore/src");
+        Path file = tempDir.resolve("restore.snap");
+        new TreeSnapshotExporter(client).export("/restore/src", file, true);
+        TreeSnapshotRestorer restorer = new TreeSnapshotRestorer(client);
+
+        TreeSnapshotRestorer.Stats first = restorer.restore(file, "/restore/dst", RestoreMode.MERGE, 4);
+        assertThat(first.created()).isEqualTo(1 + 20 + 20 * 60);
+        for (TreeSnapshotReader.Node node : readAll(file)) {
+            String target = "/restore/dst" + node.path().substring("/restore/src".length());
+            assertThat(client.getData().forPath(target)).isEqualTo(node.data());
+        }
+
+        client.setData().forPath("/restore/dst/a7/b7", "drifted".getBytes(StandardCharsets.UTF_8));
+        client.create().forPath("/restore/dst/a7/extra", new byte[0]);
+        TreeSnapshotRestorer.Stats second = restorer.restore(file, "/restore/dst", RestoreMode.MERGE, 4);
+        assertThat(second.created()).isZero();
+        assertThat(second.updated()).isEqualTo(1);
+        assertThat(second.unchanged()).isEqualTo(1 + 20 + 20 * 60 - 1);
+        assertThat(client.getData().forPath("/restore/dst/a7/b7")).isEqualTo(client.getData().forPath("/restore/src/a7/b7"));
+        assertThat(client.checkExists().forPath("/restore/dst/a7/extra")).isNotNull();
+    }
+
+    @Test
+    void testRestoreOverwriteReplacesTheTarget() throws Exception {
+        seedTree("/overwrite");
+        Path file = tempDir.resolve("overwrite.snap");
+        new TreeSnapshotExporter(client).export("/overwrite", file, false);
+        client.create().forPath("/overwrite/a0/extra", new byte[0]);
+        client.setData().forPath("/overwrite/a1", "drifted".getBytes(StandardCharsets.UTF_8));
+
+        TreeSnapshotRestorer.Stats stats = new TreeSnapshotRestorer(client).restore(file, null, RestoreMode.OVERWRITE, 2);
+
+        assertThat(stats.created()).isEqualTo(1 + 20 + 20 * 60);
+        assertThat(client.checkExists().forPath("/overwrite/a0/extra")).isNull();
+        assertThat(new String(client.getData().forPath("/overwrite/a1"), StandardCharsets.UTF_8)).isEqualTo("a1");
+    }
+
+    @Test
+    void testRejectsMissingRootAndForeignFiles() throws Exception {
+        assertThatThrownBy(() -> new TreeSnapshotExporter(client).export("/missing", tempDir.resolve("missing.snap"), false))
+                .isInstanceOf(KeeperException.NoNodeException.class);
+
+        Path foreign = tempDir.resolve("foreign.snap");
+        Files.writeString(foreign, "not a snapshot at all");
+        assertThatThrownBy(() -> new TreeSnapshotReader(foreign)).isInstanceOf(IOException.class);
+
+        client.create().forPath("/short", new byte[0]);
+        Path truncated = tempDir.resolve("truncated.snap");
+        new TreeSnapshotExporter(client).export("/short", truncated, false);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 14));
+        assertThatThrownBy(() -> readAll(truncated)).hasMessageContaining("truncated");
+    }
+}
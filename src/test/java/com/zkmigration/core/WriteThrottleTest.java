@@ -0,0 +1,103 @@
+package com.zkmigration.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteThrottleTest {
+
+    @Test
+    void testLimitsOperationsPerSecond() throws Exception {
+        WriteThrottle throttle = new WriteThrottle(100, 0, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            throttle.acquire(1, 0);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 100 ms of burst, the remaining 30 operations at 10 ms each
+        assertThat(millis).isGreaterThanOrEqualTo(250);
+        assertThat(throttle.stats().operations()).isEqualTo(40);
+        assertThat(throttle.stats().waits()).isPositive();
+    }
+
+    @Test
+    void testLimitsBytesPerSecond() throws Exception {
+        WriteThrottle throttle = new WriteThrottle(0, 100_000, false);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            throttle.acquire(1, 10_000);
+        }
+        throttle.acquire(1, 0);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(350);
+        assertThat(throttle.stats().bytes()).isEqualTo(50_000);
+    }
+
+    @Test
+    void testAdaptiveModeBacksOffAndRecovers() throws Exception {
+        WriteThrottle throttle = new WriteThrottle(1000, 0, true);
+        for (int i = 0; i < 20; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        }
+        assertThat(throttle.getRate()).isEqualTo(1.0);
+
+        for (int i = 0; i < 20; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(20), 1);
+        }
+        assertThat(throttle.getRate()).isLessThan(1.0);
+        assertThat(throttle.batchSize(1000)).isLessThan(1000);
+        assertThat(throttle.stats().slowdowns()).isEqualTo(1);
+
+        // Rates change at most every 100 ms, so the average settles before the next step
+        double slowed = throttle.getRate();
+        for (int i = 0; i < 40; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        }
+        Thread.sleep(150);
+        throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        assertThat(throttle.getRate()).isGreaterThan(slowed);
+    }
+
+    @Test
+    void testAdaptiveModeWithoutLimitsDelaysWrites() throws Exception {
+        WriteThrottle throttle = new WriteThrottle(0, 0, true);
+        // At most 500 operations per second while the baseline is measured
+        for (int i = 0; i < 10; i++) {
+            throttle.acquire(1, 0);
+            Thread.sleep(2);
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        }
+        throttle.acquire(200, 0);
+        long start = System.nanoTime();
+        throttle.acquire(1, 0);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(50);
+
+        for (int i = 0; i < 20; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(20), 1);
+        }
+        assertThat(throttle.getRate()).isLessThan(1.0);
+        throttle.acquire(200, 0);
+        start = System.nanoTime();
+        throttle.acquire(1, 0);
+
+        // 200 operations at no more than 70% of 500 per second, less the burst
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(300);
+        assertThat(throttle.stats().waits()).isPositive();
+    }
+
+    @Test
+    void testLatencyIsMeasuredPerOperation() {
+        WriteThrottle throttle = new WriteThrottle(0, 0, true);
+        for (int i = 0; i < 20; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), 1);
+        }
+        // A transaction of 100 operations taking 50 ms is faster per operation
+        for (int i = 0; i < 20; i++) {
+            throttle.recordLatency(TimeUnit.MILLISECONDS.toNanos(50), 100);
+        }
+        assertThat(throttle.getRate()).isEqualTo(1.0);
+    }
+}
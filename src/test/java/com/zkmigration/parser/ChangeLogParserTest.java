@@ -3,6 +3,10 @@ package com.zkmigration.parser;
 import com.zkmigration.model.ChangeLog;
 import com.zkmigration.model.ChangeLogEntry;
 import com.zkmigration.model.ChangeSet;
+import com.zkmigration.core.ChecksumUtil;
+import com.zkmigration.model.Copy;
+import com.zkmigration.model.Create;
+import com.zkmigration.model.Import;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -60,6 +64,56 @@ class ChangeLogParserTest {
         assertThat(changeSets.get(0).getChanges()).hasSize(1);
     }
 
+    @Test
+    void testParseCopy() throws IOException {
+        String yaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "1"
+                      author: "test"
+                      environments: "dev"
+                      labels: "label"
+                      changes:
+                        - copy:
+                            path: "/a"
+                            destination: "/b"
+                """;
+        Path file = tempDir.resolve("copy.yaml");
+        Files.writeString(file, yaml);
+
+        List<ChangeSet> changeSets = getChangeSets(new ChangeLogParser().parse(file.toFile()));
+
+        assertThat(changeSets.get(0).getChanges().get(0)).isInstanceOfSatisfying(Copy.class,
+                copy -> assertThat(copy.getDestination()).isEqualTo("/b"));
+    }
+
+    @Test
+    void testParseImport() throws IOException {
+        String yaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "1"
+                      author: "test"
+                      environments: "dev"
+                      labels: "label"
+                      changes:
+                        - import:
+                            path: "/config"
+                            document: "config.yaml"
+                            contentHash: "ignored"
+                """;
+        Path file = tempDir.resolve("import.yaml");
+        Files.writeString(file, yaml);
+
+        List<ChangeSet> changeSets = getChangeSets(new ChangeLogParser().parse(file.toFile()));
+
+        assertThat(changeSets.get(0).getChanges().get(0)).isInstanceOfSatisfying(Import.class, anImport -> {
+            assertThat(anImport.getPath()).isEqualTo("/config");
+            assertThat(anImport.getDocument()).isEqualTo("config.yaml");
+            assertThat(anImport.getDirectory()).isNull();
+        });
+    }
+
     @Test
     void testParseJson() throws IOException {
         String json = """
@@ -127,6 +181,44 @@ class ChangeLogParserTest {
         assertThat(changeSets.get(0).getId()).isEqualTo("included-1");
     }
 
+    @Test
+    void testCompressDefaultIsInheritedAndLeftOutOfTheChecksum() throws IOException {
+        String includedYaml = """
+                zookeeperChangeLog:
+                  - changeSet:
+                      id: "included-1"
+                      author: "included"
+                      environments: "dev"
+                      labels: "l1"
+                      changes:
+                        - create:
+                            path: "/inherits"
+                            data: "a"
+                        - create:
+                            path: "/opts-out"
+                            data: "b"
+                            compress: false
+                """;
+        Files.writeString(tempDir.resolve("included.yaml"), includedYaml);
+        Path mainFile = tempDir.resolve("main.yaml");
+        Files.writeString(mainFile, """
+                compress: true
+                zookeeperChangeLog:
+                  - include:
+                      file: "included.yaml"
+                """);
+
+        ChangeSet compressed = getChangeSets(new ChangeLogParser().parse(mainFile.toFile())).get(0);
+        Create inherits = (Create) compressed.getChanges().get(0);
+        Create optsOut = (Create) compressed.getChanges().get(1);
+        assertThat(inherits.compresses()).isTrue();
+        assertThat(optsOut.compresses()).isFalse();
+
+        ChangeSet plain = getChangeSets(new ChangeLogParser().parse(tempDir.resolve("included.yaml").toFile())).get(0);
+        assertThat(((Create) plain.getChanges().get(0)).compresses()).isFalse();
+        assertThat(ChecksumUtil.calculateChecksum(compressed)).isEqualTo(ChecksumUtil.calculateChecksum(plain));
+    }
+
     @Test
     void testMissingEnvironmentsThrowsException() throws IOException {
         String yaml = """